@@ -1,12 +1,15 @@
 package com.arsc.bookchaingateway;
 
 import com.arsc.bookchaingateway.trace.config.FabricProperties;
+import com.arsc.bookchaingateway.trace.config.GatewayRuntimeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 @SpringBootApplication
 @EnableConfigurationProperties(FabricProperties.class)
+@ImportRuntimeHints(GatewayRuntimeHints.class)
 public class BookChainGatewayApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,139 @@
+package com.arsc.bookchaingateway.trace.audit;
+
+import com.arsc.bookchaingateway.trace.config.AuditProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 交易审计日志管道
+ * 请求线程只把记录放进有界环形缓冲区，由独立的写线程落盘到 AUDIT 日志；
+ * 缓冲区满时直接丢弃并计数，绝不阻塞请求线程。
+ */
+@Component
+public class AuditLogger {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditLogger.class);
+    // 独立的审计 logger，在 logback-spring.xml 中路由到 AUDIT_FILE
+    private static final Logger auditLog = LoggerFactory.getLogger("AUDIT");
+    private static final int DRAIN_BATCH = 256;
+
+    private final AuditProperties auditProperties;
+    private final AtomicLong dropped = new AtomicLong();
+    private BlockingQueue<AuditRecord> buffer;
+    private Thread writer;
+    private volatile boolean running;
+
+    public AuditLogger(AuditProperties auditProperties) {
+        this.auditProperties = auditProperties;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!auditProperties.isEnabled()) {
+            logger.info("交易审计日志已关闭");
+            return;
+        }
+        buffer = new ArrayBlockingQueue<>(Math.max(16, auditProperties.getBufferSize()));
+        running = true;
+        writer = new Thread(this::drainLoop, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+        logger.info("交易审计日志已启动: bufferSize={}, readSampleRate={}",
+                auditProperties.getBufferSize(), auditProperties.getReadSampleRate());
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (writer != null) {
+            writer.interrupt();
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(2));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 查询类记录是否命中采样，调用方应先判断再构造记录，避免无谓的分配
+     */
+    public boolean sampleRead() {
+        if (buffer == null) {
+            return false;
+        }
+        double rate = auditProperties.getReadSampleRate();
+        return rate >= 1.0 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    public boolean isEnabled() {
+        return buffer != null;
+    }
+
+    /**
+     * 非阻塞投递，缓冲区满时丢弃
+     */
+    public void record(AuditRecord record) {
+        if (buffer == null) {
+            return;
+        }
+        if (!buffer.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void drainLoop() {
+        List<AuditRecord> batch = new ArrayList<>(DRAIN_BATCH);
+        StringBuilder sb = new StringBuilder(256);
+        long reportedDropped = 0;
+        while (running || !buffer.isEmpty()) {
+            try {
+                AuditRecord first = buffer.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, DRAIN_BATCH - 1);
+                writeBatch(batch, sb);
+
+                long droppedNow = dropped.get();
+                if (droppedNow != reportedDropped) {
+                    auditLog.warn("审计缓冲区已满，累计丢弃 {} 条记录", droppedNow);
+                    reportedDropped = droppedNow;
+                }
+            } catch (InterruptedException e) {
+                // stop() 触发，继续把缓冲区剩余记录写完
+                buffer.drainTo(batch);
+                writeBatch(batch, sb);
+                return;
+            } catch (Exception e) {
+                logger.error("审计日志写入异常: {}", e.getMessage(), e);
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<AuditRecord> batch, StringBuilder sb) {
+        for (AuditRecord record : batch) {
+            sb.setLength(0);
+            record.appendTo(sb);
+            auditLog.info(sb.toString());
+        }
+        batch.clear();
+    }
+}
@@ -0,0 +1,81 @@
+package com.arsc.bookchaingateway.trace.audit;
+
+/**
+ * 单笔链上调用的审计记录 (字段固定，耗时单位为微秒)
+ */
+public final class AuditRecord {
+
+    private final String orgId;
+    private final String function;
+    private final String bookId;
+    private final String txId;
+    private final int size;
+    private final long endorseMicros;
+    private final long commitMicros;
+    private final long totalMicros;
+    private final boolean success;
+
+    public AuditRecord(String orgId, String function, String bookId, String txId, int size,
+            long endorseMicros, long commitMicros, long totalMicros, boolean success) {
+        this.orgId = orgId;
+        this.function = function;
+        this.bookId = bookId;
+        this.txId = txId;
+        this.size = size;
+        this.endorseMicros = endorseMicros;
+        this.commitMicros = commitMicros;
+        this.totalMicros = totalMicros;
+        this.success = success;
+    }
+
+    /**
+     * 以 key=value 形式追加到缓冲区，由写线程复用同一个 StringBuilder
+     */
+    void appendTo(StringBuilder sb) {
+        sb.append("org=").append(orgId)
+                .append(" fn=").append(function)
+                .append(" bookId=").append(bookId)
+                .append(" txId=").append(txId)
+                .append(" size=").append(size)
+                .append(" endorseUs=").append(endorseMicros)
+                .append(" commitUs=").append(commitMicros)
+                .append(" totalUs=").append(totalMicros)
+                .append(" ok=").append(success);
+    }
+
+    public String getOrgId() {
+        return orgId;
+    }
+
+    public String getFunction() {
+        return function;
+    }
+
+    public String getBookId() {
+        return bookId;
+    }
+
+    public String getTxId() {
+        return txId;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getEndorseMicros() {
+        return endorseMicros;
+    }
+
+    public long getCommitMicros() {
+        return commitMicros;
+    }
+
+    public long getTotalMicros() {
+        return totalMicros;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+}
@@ -0,0 +1,42 @@
+package com.arsc.bookchaingateway.trace.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 交易审计日志配置
+ */
+@Component
+@ConfigurationProperties(prefix = "audit")
+public class AuditProperties {
+
+    private boolean enabled = true;
+    // 环形缓冲区容量，写满后新记录直接丢弃，不阻塞请求线程
+    private int bufferSize = 8192;
+    // 查询类 (evaluate) 记录的采样率，0~1，写交易始终全量记录
+    private double readSampleRate = 0.1;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public double getReadSampleRate() {
+        return readSampleRate;
+    }
+
+    public void setReadSampleRate(double readSampleRate) {
+        this.readSampleRate = readSampleRate;
+    }
+}
@@ -3,7 +3,9 @@ package com.arsc.bookchaingateway.trace.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Component
@@ -13,7 +15,18 @@ public class FabricProperties {
     private String channelName;
     private String chaincodeName;
     private int timeoutSeconds = 30;
+    // 分片列表 (通道 + 链码)，按 bookId 一致性哈希路由；为空时退化为 channelName/chaincodeName 单分片
+    private List<ShardConfig> shards = new ArrayList<>();
+    // 首次上线时的分片数；之后新增分片只能追加到 shards 末尾。写交易会探测此后各代环上的候选分片，
+    // 找到新增分片前写入的图书所在分片。默认 1 最保守，按实际首次上线的分片数配置可减少探测
+    private int initialShardCount = 1;
+    // 已定位图书所在分片的 LRU 缓存容量
+    private int shardLocationCacheSize = 100000;
     private Map<String, OrgConfig> organizations = new HashMap<>();
+    // 操作员身份网关 LRU 缓存容量 (所有机构共享)
+    private int identityCacheSize = 1024;
+    // 操作员身份加载失败 (如身份不存在) 的缓存时间，期间同一操作员的请求直接返回原错误
+    private long identityFailureTtlMs = 5000;
 
     public String getChannelName() {
         return channelName;
@@ -39,6 +52,43 @@ public class FabricProperties {
         this.timeoutSeconds = timeoutSeconds;
     }
 
+    public List<ShardConfig> getShards() {
+        return shards;
+    }
+
+    public void setShards(List<ShardConfig> shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * 实际生效的分片列表
+     */
+    public List<ShardConfig> resolveShards() {
+        if (!shards.isEmpty()) {
+            return shards;
+        }
+        ShardConfig shard = new ShardConfig();
+        shard.setChannelName(channelName);
+        shard.setChaincodeName(chaincodeName);
+        return List.of(shard);
+    }
+
+    public int getInitialShardCount() {
+        return initialShardCount;
+    }
+
+    public void setInitialShardCount(int initialShardCount) {
+        this.initialShardCount = initialShardCount;
+    }
+
+    public int getShardLocationCacheSize() {
+        return shardLocationCacheSize;
+    }
+
+    public void setShardLocationCacheSize(int shardLocationCacheSize) {
+        this.shardLocationCacheSize = shardLocationCacheSize;
+    }
+
     public Map<String, OrgConfig> getOrganizations() {
         return organizations;
     }
@@ -47,6 +97,22 @@ public class FabricProperties {
         this.organizations = organizations;
     }
 
+    public int getIdentityCacheSize() {
+        return identityCacheSize;
+    }
+
+    public void setIdentityCacheSize(int identityCacheSize) {
+        this.identityCacheSize = identityCacheSize;
+    }
+
+    public long getIdentityFailureTtlMs() {
+        return identityFailureTtlMs;
+    }
+
+    public void setIdentityFailureTtlMs(long identityFailureTtlMs) {
+        this.identityFailureTtlMs = identityFailureTtlMs;
+    }
+
     public OrgConfig getOrgConfig(String orgId) {
         String key = orgId.toLowerCase();
         if (!organizations.containsKey(key)) {
@@ -55,6 +121,34 @@ public class FabricProperties {
         return organizations.get(key);
     }
 
+    public static class ShardConfig {
+        private String channelName;
+        private String chaincodeName;
+
+        public String getChannelName() {
+            return channelName;
+        }
+
+        public void setChannelName(String channelName) {
+            this.channelName = channelName;
+        }
+
+        public String getChaincodeName() {
+            return chaincodeName;
+        }
+
+        public void setChaincodeName(String chaincodeName) {
+            this.chaincodeName = chaincodeName;
+        }
+
+        /**
+         * 分片在哈希环上的标识
+         */
+        public String getKey() {
+            return channelName + "/" + chaincodeName;
+        }
+    }
+
     public static class OrgConfig {
         private String mspId;
         private String peerEndpoint;
@@ -62,6 +156,8 @@ public class FabricProperties {
         private String tlsCert;
         private String userCert;
         private String userKey;
+        // 操作员身份目录 (文件系统路径)，每个操作员一个子目录，包含 cert.pem 与 key.pem
+        private String keystoreDir;
 
         public String getMspId() {
             return mspId;
@@ -110,5 +206,13 @@ public class FabricProperties {
         public void setUserKey(String userKey) {
             this.userKey = userKey;
         }
+
+        public String getKeystoreDir() {
+            return keystoreDir;
+        }
+
+        public void setKeystoreDir(String keystoreDir) {
+            this.keystoreDir = keystoreDir;
+        }
     }
 }
@@ -0,0 +1,80 @@
+package com.arsc.bookchaingateway.trace.config;
+
+import com.arsc.bookchaingateway.trace.dto.ApiResponse;
+import com.arsc.bookchaingateway.trace.dto.BookDTO;
+import com.arsc.bookchaingateway.trace.dto.ShardBatchResult;
+import com.arsc.bookchaingateway.trace.outbox.DeadLetter;
+import com.arsc.bookchaingateway.trace.outbox.InFlightTransaction;
+import com.arsc.bookchaingateway.trace.outbox.OutboxEntry;
+import com.arsc.bookchaingateway.trace.outbox.OutboxStatus;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.IOException;
+
+/**
+ * Spring AOT / GraalVM 原生镜像所需的反射与资源提示
+ * 仅在 AOT 构建阶段执行 (mvn -Pnative)，JVM 模式下不会被调用。
+ */
+public class GatewayRuntimeHints implements RuntimeHintsRegistrar {
+
+    // fabric-gateway 依赖的 protobuf 消息类型，按包扫描注册
+    private static final String FABRIC_PROTOS_PATTERN = "classpath*:org/hyperledger/fabric/protos/**/*.class";
+
+    // grpc 各 Registry 通过 Class.forName 加载的硬编码实现
+    private static final String[] GRPC_PROVIDERS = {
+            "io.grpc.netty.shaded.io.grpc.netty.NettyChannelProvider",
+            "io.grpc.netty.shaded.io.grpc.netty.UdsNettyChannelProvider",
+            "io.grpc.netty.shaded.io.grpc.netty.NettyServerProvider",
+            "io.grpc.netty.shaded.io.grpc.netty.UdsNameResolverProvider",
+            "io.grpc.internal.DnsNameResolverProvider",
+            "io.grpc.internal.PickFirstLoadBalancerProvider",
+            "io.grpc.util.SecretRoundRobinLoadBalancerProvider$Provider",
+            "io.grpc.util.OutlierDetectionLoadBalancerProvider"
+    };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        // 机构证书与私钥 (application.yml 中的 tls-cert / user-cert / user-key)
+        hints.resources().registerPattern("network/**");
+        // swagger-ui 静态资源
+        hints.resources().registerPattern("META-INF/resources/webjars/swagger-ui/**");
+
+        hints.reflection().registerType(BookDTO.class, MemberCategory.values());
+        hints.reflection().registerType(ApiResponse.class, MemberCategory.values());
+        hints.reflection().registerType(ShardBatchResult.class, MemberCategory.values());
+        // 发件箱日志 / 死信文件的 Jackson 序列化类型，同时也作为接口响应返回
+        hints.reflection().registerType(OutboxEntry.class, MemberCategory.values());
+        hints.reflection().registerType(DeadLetter.class, MemberCategory.values());
+        hints.reflection().registerType(InFlightTransaction.class, MemberCategory.values());
+        hints.reflection().registerType(OutboxStatus.class, MemberCategory.values());
+
+        for (String provider : GRPC_PROVIDERS) {
+            hints.reflection().registerTypeIfPresent(classLoader, provider,
+                    MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS, MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+
+        registerFabricProtos(hints, classLoader);
+    }
+
+    private void registerFabricProtos(RuntimeHints hints, ClassLoader classLoader) {
+        try {
+            Resource[] resources = new PathMatchingResourcePatternResolver(classLoader)
+                    .getResources(FABRIC_PROTOS_PATTERN);
+            for (Resource resource : resources) {
+                String path = resource.getURL().getPath();
+                int start = path.indexOf("org/hyperledger/fabric/protos/");
+                String className = path.substring(start, path.length() - ".class".length()).replace('/', '.');
+                // protobuf 生成代码通过反射访问 getDefaultInstance / newBuilder 等公共方法
+                hints.reflection().registerType(TypeReference.of(className),
+                        MemberCategory.INVOKE_PUBLIC_METHODS, MemberCategory.DECLARED_FIELDS);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("扫描 fabric-protos 类失败", e);
+        }
+    }
+}
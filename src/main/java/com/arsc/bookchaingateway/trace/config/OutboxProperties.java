@@ -0,0 +1,100 @@
+package com.arsc.bookchaingateway.trace.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 本地持久化发件箱 (outbox) 配置
+ */
+@Component
+@ConfigurationProperties(prefix = "outbox")
+public class OutboxProperties {
+
+    // 关闭时写请求直接同步上链
+    private boolean enabled = false;
+    private String directory = "data/outbox";
+    // 单个日志段最大字节数，超过后滚动到新段
+    private long segmentMaxBytes = 64L * 1024 * 1024;
+    // 组提交间隔，同一间隔内的写入共用一次 fsync
+    private long fsyncIntervalMs = 5;
+    // 后台投递时单笔批量交易最多合并的图书数
+    private int drainBatchSize = 50;
+    // 后台投递的链上交易速率上限 (笔/秒)
+    private int maxTransactionsPerSecond = 20;
+    // 非网络类错误的最大重试次数，超过后进入死信
+    private int maxAttempts = 5;
+    private long retryBackoffMs = 1000;
+    private long maxBackoffMs = 30000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public long getSegmentMaxBytes() {
+        return segmentMaxBytes;
+    }
+
+    public void setSegmentMaxBytes(long segmentMaxBytes) {
+        this.segmentMaxBytes = segmentMaxBytes;
+    }
+
+    public long getFsyncIntervalMs() {
+        return fsyncIntervalMs;
+    }
+
+    public void setFsyncIntervalMs(long fsyncIntervalMs) {
+        this.fsyncIntervalMs = fsyncIntervalMs;
+    }
+
+    public int getDrainBatchSize() {
+        return drainBatchSize;
+    }
+
+    public void setDrainBatchSize(int drainBatchSize) {
+        this.drainBatchSize = drainBatchSize;
+    }
+
+    public int getMaxTransactionsPerSecond() {
+        return maxTransactionsPerSecond;
+    }
+
+    public void setMaxTransactionsPerSecond(int maxTransactionsPerSecond) {
+        this.maxTransactionsPerSecond = maxTransactionsPerSecond;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getRetryBackoffMs() {
+        return retryBackoffMs;
+    }
+
+    public void setRetryBackoffMs(long retryBackoffMs) {
+        this.retryBackoffMs = retryBackoffMs;
+    }
+
+    public long getMaxBackoffMs() {
+        return maxBackoffMs;
+    }
+
+    public void setMaxBackoffMs(long maxBackoffMs) {
+        this.maxBackoffMs = maxBackoffMs;
+    }
+}
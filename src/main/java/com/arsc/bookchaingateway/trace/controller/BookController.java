@@ -2,6 +2,8 @@ package com.arsc.bookchaingateway.trace.controller;
 
 import com.arsc.bookchaingateway.trace.dto.ApiResponse;
 import com.arsc.bookchaingateway.trace.dto.BookDTO;
+import com.arsc.bookchaingateway.trace.dto.ShardBatchResult;
+import com.arsc.bookchaingateway.trace.outbox.OutboxService;
 import com.arsc.bookchaingateway.trace.service.FabricGatewayService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
@@ -13,6 +15,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 图书溯源管理控制器
@@ -28,6 +31,9 @@ public class BookController {
     @Autowired
     private FabricGatewayService fabricGatewayService;
 
+    @Autowired
+    private OutboxService outboxService;
+
     /**
      * 1. 初始上链 (Create)
      */
@@ -38,9 +44,13 @@ public class BookController {
 
         String orgId = bookDTO.getOrgId() != null ? bookDTO.getOrgId() : "ORG1";
         logger.debug("[{}] 收到图书上链请求: id={}, name={}", orgId, bookDTO.getId(), bookDTO.getName());
+        if (outboxService.isEnabled()) {
+            return enqueue(orgId, "createBook", List.of(bookDTO));
+        }
         try {
             String resultStr = fabricGatewayService.createBook(
                     orgId,
+                    bookDTO.getOperatorId(),
                     bookDTO.getId(),
                     bookDTO.getName(),
                     bookDTO.getIsbn(),
@@ -51,7 +61,6 @@ public class BookController {
                     bookDTO.getOperator(),
                     bookDTO.getOperatorRole());
             Object result = objectMapper.readValue(resultStr, Object.class);
-            logger.info("[{}] 图书上链成功: id={}", orgId, bookDTO.getId());
             return ApiResponse.success(result);
         } catch (Exception e) {
             logger.error("[{}] 图书上链失败: id={}, error={}", orgId, bookDTO.getId(), e.getMessage());
@@ -62,7 +71,9 @@ public class BookController {
     /**
      * 6. 批量上链 (Batch Create)
      */
-    @Operation(summary = "批量图书上链", description = "原子性地将一批图书录入区块链。如果其中任何一本ID重复，整批操作将失败。")
+    @Operation(summary = "批量图书上链", description = "将一批图书录入区块链。未配置分片时整批原子执行，任何一本ID重复整批失败；"
+            + "配置多分片时按分片拆分，每个分片的子批量各自原子，返回各分片的 bookIds、状态 (COMMITTED/FAILED/UNKNOWN) 与 txId，"
+            + "FAILED (背书或验证失败) 的图书可以直接重试；UNKNOWN (提交出错或无法确认) 的交易可能已经生效，需先按 txId 核对。")
     @PostMapping("/batch")
     public ApiResponse<Object> batchCreateBooks(
             @Parameter(description = "图书列表DTO", required = true) @RequestBody List<BookDTO> bookList) {
@@ -72,11 +83,15 @@ public class BookController {
         }
         String orgId = bookList.get(0).getOrgId() != null ? bookList.get(0).getOrgId() : "ORG1";
 
-        logger.info("[{}] 收到批量上链请求，数量: {}", orgId, bookList.size());
+        logger.debug("[{}] 收到批量上链请求，数量: {}", orgId, bookList.size());
+        if (outboxService.isEnabled()) {
+            return enqueue(orgId, "batchCreateBooks", bookList);
+        }
 
         try {
-            String resultStr = fabricGatewayService.batchCreateBooks(orgId, bookList);
-            return ApiResponse.success(resultStr);
+            String operatorId = FabricGatewayService.batchOperatorId(bookList);
+            List<ShardBatchResult> results = fabricGatewayService.batchCreateBooks(orgId, operatorId, bookList);
+            return batchResponse("批量上链", results);
         } catch (Exception e) {
             logger.error("[{}] 批量上链失败: {}", orgId, e.getMessage());
             return ApiResponse.error("批量上链失败: " + e.getMessage());
@@ -91,13 +106,14 @@ public class BookController {
     public ApiResponse<Object> getBook(
             @Parameter(description = "图书唯一ID", example = "ISBN-001") @PathVariable("id") String id,
 
-            @Parameter(description = "查询发起方机构ID", example = "ORG1") @RequestParam(value = "orgId", defaultValue = "ORG1") String orgId) {
+            @Parameter(description = "查询发起方机构ID", example = "ORG1") @RequestParam(value = "orgId", defaultValue = "ORG1") String orgId,
+
+            @Parameter(description = "操作员身份ID，为空时使用机构默认身份", example = "op-1001") @RequestParam(value = "operatorId", required = false) String operatorId) {
 
         logger.debug("[{}] 收到图书查询请求: id={}", orgId, id);
         try {
-            String resultStr = fabricGatewayService.queryBook(orgId, id);
+            String resultStr = fabricGatewayService.queryBook(orgId, operatorId, id);
             Object result = objectMapper.readValue(resultStr, Object.class);
-            logger.info("[{}] 图书查询成功: id={}", orgId, id);
             return ApiResponse.success(result);
         } catch (Exception e) {
             logger.error("[{}] 图书查询失败: id={}, error={}", orgId, id, e.getMessage());
@@ -118,16 +134,20 @@ public class BookController {
         String orgId = bookDTO.getOrgId() != null ? bookDTO.getOrgId() : "ORG1";
         logger.debug("[{}] 收到图书更新请求: id={}, location={}, status={}",
                 orgId, id, bookDTO.getLocation(), bookDTO.getStatus());
+        if (outboxService.isEnabled()) {
+            bookDTO.setId(id);
+            return enqueue(orgId, "updateBookLocation", List.of(bookDTO));
+        }
         try {
             String resultStr = fabricGatewayService.updateBookLocation(
                     orgId,
+                    bookDTO.getOperatorId(),
                     id,
                     bookDTO.getLocation(),
                     bookDTO.getStatus(),
                     bookDTO.getOperator(),
                     bookDTO.getOperatorRole());
             Object result = objectMapper.readValue(resultStr, Object.class);
-            logger.info("[{}] 图书更新成功: id={}", orgId, id);
             return ApiResponse.success(result);
         } catch (Exception e) {
             logger.error("[{}] 图书更新失败: id={}, error={}", orgId, id, e.getMessage());
@@ -138,7 +158,9 @@ public class BookController {
     /**
      * 7. 批量流转更新 (Batch Update)
      */
-    @Operation(summary = "批量更新图书流转状态", description = "原子性地更新多本图书的当前位置、状态及操作人信息，形成批量流转记录。只有当整批包含的所有的图书全都有效时才会成功。")
+    @Operation(summary = "批量更新图书流转状态", description = "更新多本图书的当前位置、状态及操作人信息，形成批量流转记录。未配置分片时整批原子执行，只有整批图书全都有效时才会成功；"
+            + "配置多分片时每个分片的子批量各自原子，返回各分片的 bookIds、状态 (COMMITTED/FAILED/UNKNOWN) 与 txId；"
+            + "UNKNOWN 的交易可能已经生效，需先按 txId 核对再决定是否重试。")
     @PutMapping("/batch")
     public ApiResponse<Object> batchUpdateBooks(
             @Parameter(description = "包含更新信息的图书列表DTO（列表中的元素需要指定 bookId 以及要更新的信息）", required = true) @RequestBody List<BookDTO> bookList) {
@@ -148,11 +170,15 @@ public class BookController {
         }
         String orgId = bookList.get(0).getOrgId() != null ? bookList.get(0).getOrgId() : "ORG1";
 
-        logger.info("[{}] 收到批量流转更新请求，数量: {}", orgId, bookList.size());
+        logger.debug("[{}] 收到批量流转更新请求，数量: {}", orgId, bookList.size());
+        if (outboxService.isEnabled()) {
+            return enqueue(orgId, "batchUpdateBookLocation", bookList);
+        }
 
         try {
-            String resultStr = fabricGatewayService.batchUpdateBookLocation(orgId, bookList);
-            return ApiResponse.success(resultStr);
+            String operatorId = FabricGatewayService.batchOperatorId(bookList);
+            List<ShardBatchResult> results = fabricGatewayService.batchUpdateBookLocation(orgId, operatorId, bookList);
+            return batchResponse("批量流转更新", results);
         } catch (Exception e) {
             logger.error("[{}] 批量流转更新失败: {}", orgId, e.getMessage());
             return ApiResponse.error("批量更流转新失败: " + e.getMessage());
@@ -167,12 +193,19 @@ public class BookController {
     public ApiResponse<Object> deleteBook(
             @Parameter(description = "图书唯一ID", example = "ISBN-001") @PathVariable("id") String id,
 
-            @Parameter(description = "删除发起方机构ID", example = "ORG1") @RequestParam(value = "orgId", defaultValue = "ORG1") String orgId) {
+            @Parameter(description = "删除发起方机构ID", example = "ORG1") @RequestParam(value = "orgId", defaultValue = "ORG1") String orgId,
+
+            @Parameter(description = "操作员身份ID，为空时使用机构默认身份", example = "op-1001") @RequestParam(value = "operatorId", required = false) String operatorId) {
 
         logger.debug("[{}] 收到图书删除请求: id={}", orgId, id);
+        if (outboxService.isEnabled()) {
+            BookDTO bookDTO = new BookDTO();
+            bookDTO.setId(id);
+            bookDTO.setOperatorId(operatorId);
+            return enqueue(orgId, "deleteBook", List.of(bookDTO));
+        }
         try {
-            String resultStr = fabricGatewayService.deleteBook(orgId, id);
-            logger.info("[{}] 图书删除成功: id={}", orgId, id);
+            String resultStr = fabricGatewayService.deleteBook(orgId, operatorId, id);
             return ApiResponse.success(resultStr);
         } catch (Exception e) {
             logger.error("[{}] 图书删除失败: id={}, error={}", orgId, id, e.getMessage());
@@ -188,17 +221,48 @@ public class BookController {
     public ApiResponse<Object> getBookHistory(
             @Parameter(description = "图书唯一ID", example = "ISBN-001") @PathVariable("id") String id,
 
-            @Parameter(description = "查询发起方机构ID", example = "ORG1") @RequestParam(value = "orgId", defaultValue = "ORG1") String orgId) {
+            @Parameter(description = "查询发起方机构ID", example = "ORG1") @RequestParam(value = "orgId", defaultValue = "ORG1") String orgId,
+
+            @Parameter(description = "操作员身份ID，为空时使用机构默认身份", example = "op-1001") @RequestParam(value = "operatorId", required = false) String operatorId) {
 
         logger.debug("[{}] 收到图书历史查询请求: id={}", orgId, id);
         try {
-            String resultStr = fabricGatewayService.getBookHistory(orgId, id);
+            String resultStr = fabricGatewayService.getBookHistory(orgId, operatorId, id);
             Object result = objectMapper.readValue(resultStr, Object.class);
-            logger.info("[{}] 图书历史查询成功: id={}", orgId, id);
             return ApiResponse.success(result);
         } catch (Exception e) {
             logger.error("[{}] 图书历史查询失败: id={}, error={}", orgId, id, e.getMessage());
             return ApiResponse.error("查询区块链历史数据失败: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 批量接口响应：单分片时与原来一致直接返回合约结果；跨分片时返回各分片结果，部分失败时以错误码返回，
+     * 客户端据此只重试未生效的图书，避免重试已上链分片造成 ID 重复
+     */
+    private ApiResponse<Object> batchResponse(String action, List<ShardBatchResult> results) {
+        if (results.size() == 1) {
+            return ApiResponse.success(results.get(0).getResult());
+        }
+        for (ShardBatchResult result : results) {
+            if (!ShardBatchResult.COMMITTED.equals(result.getStatus())) {
+                // 各分片的失败原因已由服务层逐条记录
+                return ApiResponse.error(action + "部分失败", results);
+            }
+        }
+        return ApiResponse.success(results);
+    }
+
+    /**
+     * 发件箱模式：写请求落盘后立即确认，由后台线程异步上链
+     */
+    private ApiResponse<Object> enqueue(String orgId, String function, List<BookDTO> books) {
+        try {
+            long seq = outboxService.enqueue(orgId, function, books);
+            return ApiResponse.success(Map.of("outboxSeq", seq, "status", "QUEUED"));
+        } catch (Exception e) {
+            logger.error("[{}] 写入发件箱失败: function={}, error={}", orgId, function, e.getMessage());
+            return ApiResponse.error("写入发件箱失败: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.arsc.bookchaingateway.trace.controller;
+
+import com.arsc.bookchaingateway.trace.dto.ApiResponse;
+import com.arsc.bookchaingateway.trace.outbox.DeadLetter;
+import com.arsc.bookchaingateway.trace.outbox.OutboxService;
+import com.arsc.bookchaingateway.trace.outbox.OutboxStatus;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * 持久化发件箱监控控制器
+ */
+@Tag(name = "发件箱监控", description = "查看本地发件箱的投递进度与死信记录")
+@RestController
+@RequestMapping("/api/outbox")
+public class OutboxController {
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Operation(summary = "查询投递进度", description = "返回已接收序号、已投递序号、待投递数量以及链上网络是否处于降级状态。")
+    @GetMapping("/status")
+    public ApiResponse<OutboxStatus> getStatus() {
+        return ApiResponse.success(outboxService.getStatus());
+    }
+
+    @Operation(summary = "查询死信记录", description = "返回超过最大重试次数仍无法上链的写请求及最后一次错误信息。")
+    @GetMapping("/dead-letters")
+    public ApiResponse<List<DeadLetter>> getDeadLetters() {
+        return ApiResponse.success(outboxService.getDeadLetters());
+    }
+}
@@ -23,6 +23,10 @@ public class ApiResponse<T> {
         return new ApiResponse<>(500, "error", null);
     }
 
+    public static <T> ApiResponse<T> error(String message, T data) {
+        return new ApiResponse<>(500, message, data);
+    }
+
     public int getCode() {
         return code;
     }
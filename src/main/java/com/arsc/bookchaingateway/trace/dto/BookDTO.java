@@ -14,6 +14,9 @@ public class BookDTO {
     @Schema(description = "当前操作的机构身份ID (MSP ID)，注意ORG1:出版社  ORG2:物流中心 ORG3:书店", example = "ORG1", defaultValue = "ORG1")
     private String orgId;
 
+    @Schema(description = "签名交易所用的操作员身份ID，对应机构 keystore-dir 下的子目录；为空时使用机构默认身份", example = "op-1001")
+    private String operatorId;
+
     @Schema(description = "图书唯一标识符 (ISBN+流水号)", example = "ISBN-978-7-111-0001", requiredMode = Schema.RequiredMode.REQUIRED)
     @JsonProperty("bookId") // 确保映射到合约的 bookId
     private String id;
@@ -57,6 +60,14 @@ public class BookDTO {
         this.orgId = orgId;
     }
 
+    public String getOperatorId() {
+        return operatorId;
+    }
+
+    public void setOperatorId(String operatorId) {
+        this.operatorId = operatorId;
+    }
+
     public String getId() {
         return id;
     }
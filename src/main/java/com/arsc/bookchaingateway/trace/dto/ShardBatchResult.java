@@ -0,0 +1,70 @@
+package com.arsc.bookchaingateway.trace.dto;
+
+import java.util.List;
+
+/**
+ * 跨分片批量交易中单个分片子批量的执行结果
+ * status: COMMITTED 已上链；FAILED 背书失败或交易验证失败，未生效，可以重试；
+ * UNKNOWN 提交到排序节点时出错或无法确认提交状态，交易可能已经生效，需按 txId 核对后再决定是否重试。
+ */
+public class ShardBatchResult {
+
+    public static final String COMMITTED = "COMMITTED";
+    public static final String FAILED = "FAILED";
+    public static final String UNKNOWN = "UNKNOWN";
+
+    private String shard;
+    private List<String> bookIds;
+    private String status;
+    private String txId;
+    private String result;
+    private String error;
+
+    public String getShard() {
+        return shard;
+    }
+
+    public void setShard(String shard) {
+        this.shard = shard;
+    }
+
+    public List<String> getBookIds() {
+        return bookIds;
+    }
+
+    public void setBookIds(List<String> bookIds) {
+        this.bookIds = bookIds;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getTxId() {
+        return txId;
+    }
+
+    public void setTxId(String txId) {
+        this.txId = txId;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public void setResult(String result) {
+        this.result = result;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
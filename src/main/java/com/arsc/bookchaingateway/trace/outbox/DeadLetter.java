@@ -0,0 +1,74 @@
+package com.arsc.bookchaingateway.trace.outbox;
+
+/**
+ * 超过最大重试次数仍无法上链的发件箱记录
+ */
+public class DeadLetter {
+
+    private long seq;
+    private OutboxEntry entry;
+    private int attempts;
+    private String error;
+    // 已提交到排序节点但结果未知时记录 txId，便于人工到链上核对
+    private String txId;
+    private long failedAt;
+
+    public DeadLetter() {
+    }
+
+    public DeadLetter(long seq, OutboxEntry entry, int attempts, String error) {
+        this.seq = seq;
+        this.entry = entry;
+        this.attempts = attempts;
+        this.error = error;
+        this.failedAt = System.currentTimeMillis();
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public OutboxEntry getEntry() {
+        return entry;
+    }
+
+    public void setEntry(OutboxEntry entry) {
+        this.entry = entry;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public String getTxId() {
+        return txId;
+    }
+
+    public void setTxId(String txId) {
+        this.txId = txId;
+    }
+
+    public long getFailedAt() {
+        return failedAt;
+    }
+
+    public void setFailedAt(long failedAt) {
+        this.failedAt = failedAt;
+    }
+}
@@ -0,0 +1,57 @@
+package com.arsc.bookchaingateway.trace.outbox;
+
+/**
+ * 已背书、即将提交到排序节点的交易，提交前落盘
+ * 进程在提交后、确认前崩溃时，重启后据此重发同一笔交易或查询其提交状态，而不是重新背书生成新的 txId。
+ */
+public class InFlightTransaction {
+
+    // 该交易覆盖的发件箱记录序号范围 (合并后的连续记录)
+    private long firstSeq;
+    private long lastSeq;
+    private String txId;
+    // Transaction.getBytes()，Jackson 以 Base64 保存
+    private byte[] transaction;
+
+    public InFlightTransaction() {
+    }
+
+    public InFlightTransaction(long firstSeq, long lastSeq, String txId, byte[] transaction) {
+        this.firstSeq = firstSeq;
+        this.lastSeq = lastSeq;
+        this.txId = txId;
+        this.transaction = transaction;
+    }
+
+    public long getFirstSeq() {
+        return firstSeq;
+    }
+
+    public void setFirstSeq(long firstSeq) {
+        this.firstSeq = firstSeq;
+    }
+
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    public void setLastSeq(long lastSeq) {
+        this.lastSeq = lastSeq;
+    }
+
+    public String getTxId() {
+        return txId;
+    }
+
+    public void setTxId(String txId) {
+        this.txId = txId;
+    }
+
+    public byte[] getTransaction() {
+        return transaction;
+    }
+
+    public void setTransaction(byte[] transaction) {
+        this.transaction = transaction;
+    }
+}
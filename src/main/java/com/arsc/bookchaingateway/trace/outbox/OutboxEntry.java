@@ -0,0 +1,59 @@
+package com.arsc.bookchaingateway.trace.outbox;
+
+import com.arsc.bookchaingateway.trace.dto.BookDTO;
+
+import java.util.List;
+
+/**
+ * 发件箱中的一条待上链写请求
+ * 单本操作的 books 只有一个元素，删除操作只携带 bookId。
+ */
+public class OutboxEntry {
+
+    private String orgId;
+    private String function;
+    private List<BookDTO> books;
+    private long createdAt;
+
+    public OutboxEntry() {
+    }
+
+    public OutboxEntry(String orgId, String function, List<BookDTO> books) {
+        this.orgId = orgId;
+        this.function = function;
+        this.books = books;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    public String getOrgId() {
+        return orgId;
+    }
+
+    public void setOrgId(String orgId) {
+        this.orgId = orgId;
+    }
+
+    public String getFunction() {
+        return function;
+    }
+
+    public void setFunction(String function) {
+        this.function = function;
+    }
+
+    public List<BookDTO> getBooks() {
+        return books;
+    }
+
+    public void setBooks(List<BookDTO> books) {
+        this.books = books;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,413 @@
+package com.arsc.bookchaingateway.trace.outbox;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 分段追加日志 (write-ahead log)
+ * 记录格式: [长度 int][CRC32C int][序号 long][数据]，段文件以首条记录序号命名。
+ * 写入方按 fsync 间隔组提交，append 返回时记录已落盘；读取方为单一的后台投递线程，
+ * 通过 checkpoint 记录投递进度，完全投递完的段会被删除。
+ */
+class OutboxLog implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxLog.class);
+
+    private static final int HEADER_BYTES = 16;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private final Path directory;
+    private final long segmentMaxBytes;
+    private final long fsyncIntervalMs;
+
+    // 段首序号 -> 段文件，受 this 保护
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+    private FileChannel writeChannel;
+    private long writePosition;
+    private long nextSeq;
+    private volatile long durableSeq;
+    private volatile long checkpointSeq;
+    private volatile boolean closed;
+    // 刷盘线程正在锁外执行 force，期间不能关闭当前段文件，受 this 保护
+    private boolean forcing;
+    private final Thread flusher;
+
+    // 以下仅由投递线程访问
+    private FileChannel readChannel;
+    private long readBase;
+    private long readPosition;
+    private long readNextSeq;
+
+    OutboxLog(Path directory, long segmentMaxBytes, long fsyncIntervalMs) throws IOException {
+        this.directory = directory;
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+
+        Files.createDirectories(directory);
+        checkpointSeq = readCheckpoint();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .forEach(p -> segments.put(parseBase(p), p));
+        }
+        if (segments.isEmpty()) {
+            segments.put(checkpointSeq + 1, segmentPath(checkpointSeq + 1));
+        }
+
+        Map.Entry<Long, Path> last = segments.lastEntry();
+        writeChannel = FileChannel.open(last.getValue(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recoverTail(last.getKey());
+        durableSeq = nextSeq - 1;
+
+        openReader(checkpointSeq + 1);
+
+        flusher = new Thread(this::flushLoop, "outbox-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * 追加一条记录，组提交落盘后返回其序号
+     */
+    synchronized long append(byte[] data) throws IOException {
+        CRC32C crc = new CRC32C();
+        crc.update(data);
+        try {
+            while (writePosition >= segmentMaxBytes) {
+                if (closed) {
+                    throw new IOException("outbox 日志已关闭");
+                }
+                if (forcing) {
+                    wait();
+                    continue;
+                }
+                roll();
+            }
+            if (closed) {
+                throw new IOException("outbox 日志已关闭");
+            }
+            long seq = nextSeq;
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + data.length);
+            buffer.putInt(data.length).putInt((int) crc.getValue()).putLong(seq).put(data).flip();
+            while (buffer.hasRemaining()) {
+                writePosition += writeChannel.write(buffer, writePosition);
+            }
+            nextSeq++;
+            notifyAll();
+
+            while (durableSeq < seq) {
+                if (closed) {
+                    throw new IOException("outbox 日志已关闭");
+                }
+                wait();
+            }
+            return seq;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待 outbox 落盘被中断", e);
+        }
+    }
+
+    /**
+     * 读取下一批已落盘的记录，仅供单一投递线程调用
+     */
+    List<LogRecord> readBatch(int max) throws IOException {
+        List<LogRecord> records = new ArrayList<>();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (records.size() < max && readNextSeq <= durableSeq) {
+            if (readPosition + HEADER_BYTES > readChannel.size()) {
+                Long nextBase;
+                synchronized (this) {
+                    nextBase = segments.higherKey(readBase);
+                }
+                if (nextBase == null || nextBase != readNextSeq) {
+                    throw new IOException("outbox 日志不连续，期望序号 " + readNextSeq);
+                }
+                openReader(readNextSeq);
+                continue;
+            }
+            header.clear();
+            readFully(readChannel, header, readPosition);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            long seq = header.getLong();
+            ByteBuffer data = ByteBuffer.allocate(length);
+            readFully(readChannel, data, readPosition + HEADER_BYTES);
+            CRC32C crc = new CRC32C();
+            crc.update(data.array());
+            if (seq != readNextSeq || (int) crc.getValue() != checksum) {
+                throw new IOException("outbox 日志记录损坏，序号 " + readNextSeq);
+            }
+            records.add(new LogRecord(seq, data.array()));
+            readPosition += HEADER_BYTES + length;
+            readNextSeq++;
+        }
+        return records;
+    }
+
+    /**
+     * 持久化投递进度，并删除已完全投递的段
+     */
+    void checkpoint(long seq) throws IOException {
+        Path tmp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.writeString(tmp, Long.toString(seq), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.SYNC);
+        Files.move(tmp, directory.resolve(CHECKPOINT_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpointSeq = seq;
+
+        List<Path> obsolete = new ArrayList<>();
+        synchronized (this) {
+            while (segments.size() > 1) {
+                Map.Entry<Long, Path> first = segments.firstEntry();
+                Long secondBase = segments.higherKey(first.getKey());
+                if (secondBase > seq + 1 || first.getKey() == readBase) {
+                    break;
+                }
+                obsolete.add(segments.pollFirstEntry().getValue());
+            }
+        }
+        for (Path path : obsolete) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    long getAppendedSeq() {
+        synchronized (this) {
+            return nextSeq - 1;
+        }
+    }
+
+    long getDurableSeq() {
+        return durableSeq;
+    }
+
+    long getCheckpointSeq() {
+        return checkpointSeq;
+    }
+
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                while (forcing) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            syncLocked();
+            closed = true;
+            notifyAll();
+        }
+        flusher.interrupt();
+        writeChannel.close();
+        if (readChannel != null) {
+            readChannel.close();
+        }
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            try {
+                synchronized (this) {
+                    while (!closed && durableSeq >= nextSeq - 1) {
+                        wait();
+                    }
+                }
+                // 等待一个组提交间隔，让并发写入共用一次 fsync
+                if (fsyncIntervalMs > 0) {
+                    Thread.sleep(fsyncIntervalMs);
+                }
+                sync();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                logger.error("outbox 日志落盘失败: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 刷盘线程的组提交：只在锁内取快照和发布进度，force 在锁外执行，期间 append 可以继续写入
+     */
+    private void sync() throws IOException {
+        long target;
+        FileChannel channel;
+        synchronized (this) {
+            target = nextSeq - 1;
+            if (closed || target <= durableSeq) {
+                return;
+            }
+            channel = writeChannel;
+            forcing = true;
+        }
+        boolean forced = false;
+        try {
+            channel.force(false);
+            forced = true;
+        } finally {
+            synchronized (this) {
+                forcing = false;
+                if (forced && target > durableSeq) {
+                    durableSeq = target;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    // 调用方需持有 this 锁且没有进行中的 force (滚动段、关闭时使用)
+    private void syncLocked() throws IOException {
+        long target = nextSeq - 1;
+        if (target > durableSeq) {
+            writeChannel.force(false);
+            durableSeq = target;
+            notifyAll();
+        }
+    }
+
+    // 调用方需持有 this 锁且没有进行中的 force
+    private void roll() throws IOException {
+        syncLocked();
+        writeChannel.close();
+        Path path = segmentPath(nextSeq);
+        segments.put(nextSeq, path);
+        writeChannel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        writePosition = 0;
+    }
+
+    /**
+     * 校验最后一个段，截断掉进程崩溃时写了一半的尾部记录
+     */
+    private void recoverTail(long base) throws IOException {
+        long size = writeChannel.size();
+        long position = 0;
+        long seq = base;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            readFully(writeChannel, header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            long recordSeq = header.getLong();
+            if (length < 0 || recordSeq != seq || position + HEADER_BYTES + length > size) {
+                break;
+            }
+            ByteBuffer data = ByteBuffer.allocate(length);
+            readFully(writeChannel, data, position + HEADER_BYTES);
+            CRC32C crc = new CRC32C();
+            crc.update(data.array());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            position += HEADER_BYTES + length;
+            seq++;
+        }
+        if (position < size) {
+            logger.warn("outbox 日志尾部存在不完整记录，已从 {} 字节处截断", position);
+            writeChannel.truncate(position);
+            writeChannel.force(true);
+        }
+        writePosition = position;
+        nextSeq = seq;
+    }
+
+    private void openReader(long fromSeq) throws IOException {
+        Map.Entry<Long, Path> entry;
+        synchronized (this) {
+            entry = segments.floorEntry(fromSeq);
+            if (entry == null) {
+                entry = segments.firstEntry();
+            }
+        }
+        if (readChannel != null) {
+            readChannel.close();
+        }
+        readChannel = FileChannel.open(entry.getValue(), StandardOpenOption.READ);
+        readBase = entry.getKey();
+        readPosition = 0;
+        readNextSeq = entry.getKey();
+
+        // 跳过段内已投递的记录
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (readNextSeq < fromSeq && readPosition + HEADER_BYTES <= readChannel.size()) {
+            header.clear();
+            readFully(readChannel, header, readPosition);
+            header.flip();
+            readPosition += HEADER_BYTES + header.getInt();
+            readNextSeq++;
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path path = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        return Long.parseLong(Files.readString(path, StandardCharsets.UTF_8).trim());
+    }
+
+    private Path segmentPath(long base) {
+        return directory.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+    }
+
+    private static long parseBase(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new IOException("outbox 日志意外结束");
+            }
+        }
+    }
+
+    static final class LogRecord {
+        private final long seq;
+        private final byte[] data;
+
+        LogRecord(long seq, byte[] data) {
+            this.seq = seq;
+            this.data = data;
+        }
+
+        long getSeq() {
+            return seq;
+        }
+
+        byte[] getData() {
+            return data;
+        }
+    }
+}
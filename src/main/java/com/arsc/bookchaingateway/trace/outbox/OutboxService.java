@@ -0,0 +1,573 @@
+package com.arsc.bookchaingateway.trace.outbox;
+
+import com.arsc.bookchaingateway.trace.audit.AuditLogger;
+import com.arsc.bookchaingateway.trace.audit.AuditRecord;
+import com.arsc.bookchaingateway.trace.config.FabricProperties;
+import com.arsc.bookchaingateway.trace.config.OutboxProperties;
+import com.arsc.bookchaingateway.trace.dto.BookDTO;
+import com.arsc.bookchaingateway.trace.service.FabricGatewayService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.hyperledger.fabric.client.GatewayException;
+import org.hyperledger.fabric.client.GatewayRuntimeException;
+import org.hyperledger.fabric.client.SubmittedTransaction;
+import org.hyperledger.fabric.client.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 持久化发件箱
+ * 写请求先追加到本地 WAL 并立即确认，由后台线程按接收顺序 (因而对同一 bookId 有序) 投递上链。
+ * 连续的同类单本请求会合并为一笔批量交易；网络类故障无限退避重试，其它错误超过最大次数后进入死信。
+ * 交易一旦提交到排序节点，后续只按同一 txId 重发或查询提交状态，不再重新背书，避免同一请求上链两次；
+ * 已背书的交易在提交前落盘 (in-flight.json)，进程重启后同样按原 txId 继续。
+ */
+@Service
+public class OutboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxService.class);
+
+    private static final String DEAD_LETTER_FILE = "dead-letter.log";
+    private static final String IN_FLIGHT_FILE = "in-flight.json";
+    private static final long IDLE_WAIT_MS = 50;
+    // 视为链上网络不可用、需要原样重试的 gRPC 状态
+    // 不含 RESOURCE_EXHAUSTED：消息超限等错误重试也不会成功，应在 maxAttempts 次后进入死信
+    private static final Set<Status.Code> TRANSIENT_CODES = EnumSet.of(
+            Status.Code.UNAVAILABLE, Status.Code.DEADLINE_EXCEEDED);
+
+    private final OutboxProperties outboxProperties;
+    private final FabricProperties fabricProperties;
+    private final FabricGatewayService fabricGatewayService;
+    private final ObjectMapper objectMapper;
+    private final AuditLogger auditLogger;
+
+    private final List<DeadLetter> deadLetters = new CopyOnWriteArrayList<>();
+    private final AtomicLong submittedTransactions = new AtomicLong();
+    private OutboxLog log;
+    private Path deadLetterPath;
+    private Path inFlightPath;
+    // 上次运行中已落盘、尚未确认的交易，由投递线程在启动后首先恢复
+    private InFlightTransaction recovered;
+    private Thread drainer;
+    private volatile boolean running;
+    private volatile boolean degraded;
+    private volatile String lastError;
+    private volatile long lastErrorAt;
+    private long nextSubmitAt;
+
+    public OutboxService(OutboxProperties outboxProperties, FabricProperties fabricProperties,
+            FabricGatewayService fabricGatewayService, ObjectMapper objectMapper, AuditLogger auditLogger) {
+        this.outboxProperties = outboxProperties;
+        this.fabricProperties = fabricProperties;
+        this.fabricGatewayService = fabricGatewayService;
+        this.objectMapper = objectMapper;
+        this.auditLogger = auditLogger;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!outboxProperties.isEnabled()) {
+            return;
+        }
+        Path directory = Paths.get(outboxProperties.getDirectory());
+        log = new OutboxLog(directory, outboxProperties.getSegmentMaxBytes(), outboxProperties.getFsyncIntervalMs());
+        deadLetterPath = directory.resolve(DEAD_LETTER_FILE);
+        if (Files.exists(deadLetterPath)) {
+            for (String line : Files.readAllLines(deadLetterPath, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    deadLetters.add(objectMapper.readValue(line, DeadLetter.class));
+                }
+            }
+        }
+        inFlightPath = directory.resolve(IN_FLIGHT_FILE);
+        if (Files.exists(inFlightPath)) {
+            InFlightTransaction saved = objectMapper.readValue(inFlightPath.toFile(), InFlightTransaction.class);
+            // 已越过检查点的交易早已确认或进入死信，无需恢复
+            if (saved.getLastSeq() > log.getCheckpointSeq()) {
+                recovered = saved;
+            }
+        }
+
+        running = true;
+        drainer = new Thread(this::drainLoop, "outbox-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+        logger.info("持久化发件箱已启动: 目录={}, 待投递={}, 死信={}",
+                directory.toAbsolutePath(), log.getDurableSeq() - log.getCheckpointSeq(), deadLetters.size());
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        running = false;
+        if (drainer != null) {
+            drainer.interrupt();
+            try {
+                drainer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return log != null;
+    }
+
+    /**
+     * 追加一条写请求，落盘后返回其序号
+     * 跨分片的批量请求按分片拆成多条记录，使每条记录都对应单个分片上的一笔交易，返回最后一条的序号。
+     */
+    public long enqueue(String orgId, String function, List<BookDTO> books) throws Exception {
+        // 提前校验机构、操作员身份与 bookId，避免非法请求进入日志后才变成死信；批量请求只能使用一个操作员身份
+        fabricProperties.getOrgConfig(orgId);
+        FabricGatewayService.requireBookIds(books);
+        fabricGatewayService.resolveOperator(orgId, FabricGatewayService.batchOperatorId(books));
+        if ("createBook".equals(function)) {
+            // 与同步上链保持一致：未填出版日期时取接收时间，而不是投递时间
+            for (BookDTO book : books) {
+                if (book.getPublishDate() == null) {
+                    book.setPublishDate(new Date());
+                }
+            }
+        }
+        List<List<BookDTO>> parts = mergeKind(function) != null && books.size() > 1
+                ? fabricGatewayService.splitByShard(orgId, books) : List.of(books);
+        long seq = 0;
+        for (List<BookDTO> part : parts) {
+            seq = log.append(objectMapper.writeValueAsBytes(new OutboxEntry(orgId, function, part)));
+        }
+        return seq;
+    }
+
+    public OutboxStatus getStatus() {
+        OutboxStatus status = new OutboxStatus();
+        status.setEnabled(isEnabled());
+        if (!isEnabled()) {
+            return status;
+        }
+        status.setDurableSeq(log.getDurableSeq());
+        status.setDrainedSeq(log.getCheckpointSeq());
+        status.setPending(log.getDurableSeq() - log.getCheckpointSeq());
+        status.setSubmittedTransactions(submittedTransactions.get());
+        status.setDeadLetters(deadLetters.size());
+        status.setSegments(log.getSegmentCount());
+        status.setDegraded(degraded);
+        status.setLastError(lastError);
+        status.setLastErrorAt(lastErrorAt);
+        return status;
+    }
+
+    public List<DeadLetter> getDeadLetters() {
+        return new ArrayList<>(deadLetters);
+    }
+
+    private void drainLoop() {
+        List<Pending> pending = new ArrayList<>();
+        InFlight inFlight = null;
+        long backoffMs = outboxProperties.getRetryBackoffMs();
+        while (running) {
+            try {
+                if (pending.isEmpty()) {
+                    for (OutboxLog.LogRecord record : log.readBatch(outboxProperties.getDrainBatchSize())) {
+                        pending.add(new Pending(record.getSeq(),
+                                objectMapper.readValue(record.getData(), OutboxEntry.class)));
+                    }
+                    if (pending.isEmpty()) {
+                        Thread.sleep(IDLE_WAIT_MS);
+                        continue;
+                    }
+                }
+
+                if (inFlight == null) {
+                    acquirePermit();
+                }
+                try {
+                    if (inFlight == null && recovered != null) {
+                        inFlight = resume(pending);
+                        if (pending.isEmpty()) {
+                            continue;
+                        }
+                    }
+                    if (inFlight == null) {
+                        inFlight = new InFlight(nextGroup(pending));
+                    }
+                    deliver(inFlight);
+                    audit(inFlight, true);
+                    submittedTransactions.incrementAndGet();
+                    pending.subList(0, inFlight.group.size()).clear();
+                    log.checkpoint(inFlight.lastSeq());
+                    inFlight = null;
+                    degraded = false;
+                    backoffMs = outboxProperties.getRetryBackoffMs();
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    lastError = e.getMessage();
+                    lastErrorAt = System.currentTimeMillis();
+                    if (isTransient(e)) {
+                        // 链上不可达：保留已背书/已提交的交易，退避后从失败的阶段继续，不计入重试次数
+                        degraded = true;
+                        logger.warn("发件箱投递暂停，{}ms 后重试 (txId={}): {}", backoffMs,
+                                inFlight != null ? inFlight.txId() : null, e.getMessage());
+                        Thread.sleep(backoffMs);
+                        backoffMs = Math.min(backoffMs * 2, outboxProperties.getMaxBackoffMs());
+                    } else if (inFlight == null) {
+                        // 队首记录无法组成交易 (如 bookId 无法路由到分片)：重试也不会成功，直接进入死信，不阻塞后续写入
+                        deadLetter(pending, new InFlight(List.of(pending.get(0))), e);
+                    } else if (inFlight.commit != null) {
+                        // 交易已被排序节点接收，结果未知：只能继续查询同一 txId，不能重新背书
+                        if (++inFlight.statusFailures >= outboxProperties.getMaxAttempts()) {
+                            deadLetter(pending, inFlight, e);
+                            inFlight = null;
+                        } else {
+                            logger.warn("查询交易提交状态失败 (第 {} 次): txId={}, error={}",
+                                    inFlight.statusFailures, inFlight.txId(), e.getMessage());
+                            Thread.sleep(outboxProperties.getRetryBackoffMs());
+                        }
+                    } else {
+                        // 背书失败、排序节点拒绝或交易验证失败：交易没有生效，丢弃后重新背书
+                        audit(inFlight, false);
+                        List<Pending> group = inFlight.group;
+                        inFlight = null;
+                        if (group.size() > 1) {
+                            // 合并后的批量交易是原子的，拆回原始请求逐条投递以定位问题记录
+                            for (Pending p : group) {
+                                p.noMerge = true;
+                            }
+                        } else if (++group.get(0).attempts >= outboxProperties.getMaxAttempts()) {
+                            deadLetter(pending, new InFlight(group), e);
+                        } else {
+                            logger.warn("发件箱记录投递失败 (第 {} 次): seq={}, error={}",
+                                    group.get(0).attempts, group.get(0).seq, e.getMessage());
+                            Thread.sleep(outboxProperties.getRetryBackoffMs());
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                // 日志损坏、不连续等无法自行恢复的错误：在状态接口中暴露出来，等待人工处理
+                degraded = true;
+                lastError = "发件箱投递停滞: " + e.getMessage();
+                lastErrorAt = System.currentTimeMillis();
+                logger.error("发件箱投递线程异常: {}", e.getMessage(), e);
+                try {
+                    Thread.sleep(outboxProperties.getMaxBackoffMs());
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 从上次中断的阶段继续投递：背书 -> 提交到排序节点 -> 按 txId 查询提交状态
+     * 提交失败时重发同一笔已签名交易，即使排序节点此前已收到，重复的 txId 也不会再次生效。
+     */
+    private void deliver(InFlight inFlight) throws Exception {
+        if (inFlight.transaction == null) {
+            inFlight.startedAt = System.nanoTime();
+            inFlight.transaction = fabricGatewayService.endorse(inFlight.orgId(), inFlight.operatorId(),
+                    inFlight.function(), inFlight.books());
+            inFlight.endorsedAt = System.nanoTime();
+            inFlight.txId = inFlight.transaction.getTransactionId();
+        }
+        if (inFlight.commit == null) {
+            if (!inFlight.saved) {
+                // 先落盘再提交：提交后崩溃时，重启后重发的是同一笔交易
+                saveInFlight(inFlight);
+                inFlight.saved = true;
+            }
+            inFlight.commit = inFlight.transaction.submitAsync();
+        }
+        org.hyperledger.fabric.client.Status status = inFlight.commit.getStatus();
+        if (!status.isSuccessful()) {
+            // 已出块但验证失败 (如 MVCC 冲突)：账本未变化，可以重新背书
+            inFlight.transaction = null;
+            inFlight.commit = null;
+            inFlight.saved = false;
+            throw new IllegalStateException("交易验证失败: txId=" + inFlight.txId + ", code=" + status.getCode());
+        }
+    }
+
+    /**
+     * 覆盖写入进行中的交易，下一笔交易提交前会再次覆盖；检查点越过其序号范围后自然失效，无需删除
+     */
+    private void saveInFlight(InFlight inFlight) throws IOException {
+        InFlightTransaction saved = new InFlightTransaction(inFlight.group.get(0).seq, inFlight.lastSeq(),
+                inFlight.txId, inFlight.transaction.getBytes());
+        Path tmp = inFlightPath.resolveSibling(IN_FLIGHT_FILE + ".tmp");
+        Files.write(tmp, objectMapper.writeValueAsBytes(saved),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.SYNC);
+        Files.move(tmp, inFlightPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 恢复上次运行中已提交或可能已提交的交易：队首正是它覆盖的记录时，以原 txId 重发并查询提交状态
+     * 身份已不可用等无法恢复的情况下，结果无法确认，整组带 txId 进入死信，而不是重新背书。
+     */
+    private InFlight resume(List<Pending> pending) throws Exception {
+        InFlightTransaction saved = recovered;
+        List<Pending> group = new ArrayList<>();
+        for (Pending p : pending) {
+            if (p.seq > saved.getLastSeq()) {
+                break;
+            }
+            group.add(p);
+        }
+        if (pending.get(0).seq != saved.getFirstSeq() || group.get(group.size() - 1).seq != saved.getLastSeq()) {
+            logger.warn("发件箱恢复的交易与待投递记录不匹配，忽略: txId={}, seq={}~{}",
+                    saved.getTxId(), saved.getFirstSeq(), saved.getLastSeq());
+            recovered = null;
+            return null;
+        }
+
+        InFlight inFlight = new InFlight(group);
+        inFlight.txId = saved.getTxId();
+        inFlight.saved = true;
+        try {
+            inFlight.transaction = fabricGatewayService.restoreTransaction(inFlight.orgId(), inFlight.operatorId(),
+                    saved.getTransaction());
+        } catch (Exception e) {
+            if (isTransient(e)) {
+                throw e;
+            }
+            recovered = null;
+            deadLetter(pending, inFlight, e);
+            return null;
+        }
+        recovered = null;
+        logger.info("发件箱恢复上次未确认的交易: txId={}, seq={}~{}", saved.getTxId(), saved.getFirstSeq(),
+                saved.getLastSeq());
+        return inFlight;
+    }
+
+    private void deadLetter(List<Pending> pending, InFlight inFlight, Exception e) throws IOException {
+        String txId = inFlight.txId();
+        for (Pending p : inFlight.group) {
+            DeadLetter deadLetter = new DeadLetter(p.seq, p.entry, Math.max(p.attempts, inFlight.statusFailures),
+                    e.getMessage());
+            deadLetter.setTxId(txId);
+            Files.write(deadLetterPath,
+                    (objectMapper.writeValueAsString(deadLetter) + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+            deadLetters.add(deadLetter);
+            logger.error("发件箱记录进入死信: seq={}, function={}, txId={}, error={}",
+                    p.seq, p.entry.getFunction(), txId, e.getMessage());
+        }
+        pending.subList(0, inFlight.group.size()).clear();
+        log.checkpoint(inFlight.lastSeq());
+    }
+
+    private void audit(InFlight inFlight, boolean success) {
+        if (inFlight.startedAt == 0) {
+            return;
+        }
+        long end = System.nanoTime();
+        long endorsed = inFlight.endorsedAt != 0 ? inFlight.endorsedAt : end;
+        auditLogger.record(new AuditRecord(inFlight.orgId(), inFlight.function(), inFlight.books().get(0).getId(),
+                inFlight.txId(), inFlight.books().size(), (endorsed - inFlight.startedAt) / 1000,
+                (end - endorsed) / 1000, (end - inFlight.startedAt) / 1000, success));
+    }
+
+    /**
+     * 从队首取出可合并为一笔交易的连续记录：同机构、同操作员身份、同分片、同类操作、bookId 不重复
+     * 队首记录无法路由时抛出异常；后续记录无法路由时只停止合并，留到它成为队首时再处理。
+     */
+    private List<Pending> nextGroup(List<Pending> pending) throws Exception {
+        Pending head = pending.get(0);
+        String kind = mergeKind(head.entry.getFunction());
+        List<Pending> group = new ArrayList<>();
+        group.add(head);
+        if (head.noMerge || kind == null) {
+            return group;
+        }
+        int shard = fabricGatewayService.shardOf(head.entry.getOrgId(), head.entry.getBooks().get(0).getId());
+        Set<String> bookIds = new HashSet<>();
+        int books = 0;
+        for (BookDTO book : head.entry.getBooks()) {
+            bookIds.add(book.getId());
+            books++;
+        }
+        for (int i = 1; i < pending.size(); i++) {
+            Pending next = pending.get(i);
+            if (next.noMerge || !kind.equals(mergeKind(next.entry.getFunction()))
+                    || !head.entry.getOrgId().equalsIgnoreCase(next.entry.getOrgId())
+                    || !Objects.equals(operatorIdOf(head.entry), operatorIdOf(next.entry))
+                    || !isOnShard(next.entry, shard)
+                    || books + next.entry.getBooks().size() > outboxProperties.getDrainBatchSize()) {
+                break;
+            }
+            boolean overlap = false;
+            for (BookDTO book : next.entry.getBooks()) {
+                overlap |= bookIds.contains(book.getId());
+            }
+            if (overlap) {
+                break;
+            }
+            for (BookDTO book : next.entry.getBooks()) {
+                bookIds.add(book.getId());
+            }
+            books += next.entry.getBooks().size();
+            group.add(next);
+        }
+        return group;
+    }
+
+    private boolean isOnShard(OutboxEntry entry, int shard) {
+        try {
+            return fabricGatewayService.shardOf(entry.getOrgId(), entry.getBooks().get(0).getId()) == shard;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static String mergeKind(String function) {
+        switch (function) {
+            case "createBook":
+            case "batchCreateBooks":
+                return "batchCreateBooks";
+            case "updateBookLocation":
+            case "batchUpdateBookLocation":
+                return "batchUpdateBookLocation";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 入队时已校验同一记录内的 operatorId 一致，取首本图书的即可
+     */
+    private static String operatorIdOf(OutboxEntry entry) {
+        return entry.getBooks().get(0).getOperatorId();
+    }
+
+    /**
+     * 简单的匀速限流：两笔交易之间至少间隔 1/maxTransactionsPerSecond 秒
+     */
+    private void acquirePermit() throws InterruptedException {
+        int rate = outboxProperties.getMaxTransactionsPerSecond();
+        if (rate <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (nextSubmitAt > now) {
+            TimeUnit.NANOSECONDS.sleep(nextSubmitAt - now);
+            now = nextSubmitAt;
+        }
+        nextSubmitAt = now + TimeUnit.SECONDS.toNanos(1) / rate;
+    }
+
+    /**
+     * 是否为链上网络不可用类的错误，这类错误不计入重试次数
+     */
+    static boolean isTransient(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            Status status = null;
+            if (t instanceof GatewayException gatewayException) {
+                status = gatewayException.getStatus();
+            } else if (t instanceof GatewayRuntimeException gatewayRuntimeException) {
+                status = gatewayRuntimeException.getStatus();
+            } else if (t instanceof StatusRuntimeException statusRuntimeException) {
+                status = statusRuntimeException.getStatus();
+            }
+            if (status != null) {
+                return TRANSIENT_CODES.contains(status.getCode());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 正在投递的一笔交易：合并后的记录组及其所处阶段，阶段由 transaction / commit 是否为空表示
+     */
+    private static final class InFlight {
+        private final List<Pending> group;
+        private final List<BookDTO> books;
+        private Transaction transaction;
+        private SubmittedTransaction commit;
+        private String txId;
+        // 当前交易是否已写入 in-flight.json
+        private boolean saved;
+        private int statusFailures;
+        private long startedAt;
+        private long endorsedAt;
+
+        private InFlight(List<Pending> group) {
+            this.group = group;
+            if (group.size() == 1) {
+                this.books = group.get(0).entry.getBooks();
+            } else {
+                this.books = new ArrayList<>();
+                for (Pending p : group) {
+                    books.addAll(p.entry.getBooks());
+                }
+            }
+        }
+
+        private OutboxEntry head() {
+            return group.get(0).entry;
+        }
+
+        private String orgId() {
+            return head().getOrgId();
+        }
+
+        private String operatorId() {
+            return operatorIdOf(head());
+        }
+
+        private String function() {
+            return group.size() == 1 ? head().getFunction() : mergeKind(head().getFunction());
+        }
+
+        private List<BookDTO> books() {
+            return books;
+        }
+
+        private String txId() {
+            return txId;
+        }
+
+        private long lastSeq() {
+            return group.get(group.size() - 1).seq;
+        }
+    }
+
+    private static final class Pending {
+        private final long seq;
+        private final OutboxEntry entry;
+        private int attempts;
+        private boolean noMerge;
+
+        private Pending(long seq, OutboxEntry entry) {
+            this.seq = seq;
+            this.entry = entry;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.arsc.bookchaingateway.trace.outbox;
+
+/**
+ * 发件箱投递进度快照
+ */
+public class OutboxStatus {
+
+    private boolean enabled;
+    // 已接收 (已落盘) 的最大序号
+    private long durableSeq;
+    // 已投递完成 (上链成功或进入死信) 的最大序号
+    private long drainedSeq;
+    private long pending;
+    private long submittedTransactions;
+    private int deadLetters;
+    private int segments;
+    // 链上网络不可达，正在退避重试
+    private boolean degraded;
+    private String lastError;
+    private long lastErrorAt;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getDurableSeq() {
+        return durableSeq;
+    }
+
+    public void setDurableSeq(long durableSeq) {
+        this.durableSeq = durableSeq;
+    }
+
+    public long getDrainedSeq() {
+        return drainedSeq;
+    }
+
+    public void setDrainedSeq(long drainedSeq) {
+        this.drainedSeq = drainedSeq;
+    }
+
+    public long getPending() {
+        return pending;
+    }
+
+    public void setPending(long pending) {
+        this.pending = pending;
+    }
+
+    public long getSubmittedTransactions() {
+        return submittedTransactions;
+    }
+
+    public void setSubmittedTransactions(long submittedTransactions) {
+        this.submittedTransactions = submittedTransactions;
+    }
+
+    public int getDeadLetters() {
+        return deadLetters;
+    }
+
+    public void setDeadLetters(int deadLetters) {
+        this.deadLetters = deadLetters;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public void setSegments(int segments) {
+        this.segments = segments;
+    }
+
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    public void setDegraded(boolean degraded) {
+        this.degraded = degraded;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public long getLastErrorAt() {
+        return lastErrorAt;
+    }
+
+    public void setLastErrorAt(long lastErrorAt) {
+        this.lastErrorAt = lastErrorAt;
+    }
+}
@@ -1,12 +1,17 @@
 package com.arsc.bookchaingateway.trace.service;
 
+import com.arsc.bookchaingateway.trace.audit.AuditLogger;
+import com.arsc.bookchaingateway.trace.audit.AuditRecord;
 import com.arsc.bookchaingateway.trace.config.FabricProperties;
 import com.arsc.bookchaingateway.trace.dto.BookDTO;
+import com.arsc.bookchaingateway.trace.dto.ShardBatchResult;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.grpc.Grpc;
 import io.grpc.ManagedChannel;
 import io.grpc.TlsChannelCredentials;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.hyperledger.fabric.client.*;
 import org.hyperledger.fabric.client.identity.*;
 import org.slf4j.Logger;
@@ -18,51 +23,92 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 @Service
 public class FabricGatewayService {
 
     private static final Logger logger = LoggerFactory.getLogger(FabricGatewayService.class);
 
+    // 操作员ID 直接作为 keystore 子目录名，只允许安全字符，并排除指向身份目录本身或其上级的 "." 与 ".."，防止路径穿越
+    private static final Pattern OPERATOR_ID_PATTERN = Pattern.compile("(?!\\.{1,2}$)[A-Za-z0-9._@-]{1,128}");
+
     // 日期格式化，用于转 String 传给合约
     private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
     private final FabricProperties fabricProperties;
     private final ObjectMapper objectMapper; // Spring Boot 自动注入
-    private final Map<String, Contract> contractMap = new HashMap<>();
-
-    public FabricGatewayService(FabricProperties fabricProperties, ObjectMapper objectMapper) {
+    private final AuditLogger auditLogger;
+    private final Map<String, OrgContext> orgContextMap = new HashMap<>();
+    private OperatorGatewayCache operatorGatewayCache;
+    private List<FabricProperties.ShardConfig> shards;
+    private ShardRouter shardRouter;
+    private ShardLocator shardLocator;
+
+    public FabricGatewayService(FabricProperties fabricProperties, ObjectMapper objectMapper,
+            AuditLogger auditLogger) {
         this.fabricProperties = fabricProperties;
         this.objectMapper = objectMapper;
+        this.auditLogger = auditLogger;
     }
 
     @PostConstruct
     public void init() throws Exception {
         logger.info("==================================================");
         logger.info("正在初始化【省级联盟链多租户网关】...");
-        logger.info("通道名称: {}", fabricProperties.getChannelName());
-        logger.info("智能合约: {}", fabricProperties.getChaincodeName());
+        shards = fabricProperties.resolveShards();
+        List<String> shardKeys = new ArrayList<>();
+        for (FabricProperties.ShardConfig shard : shards) {
+            logger.info("分片 {}: 通道名称={}, 智能合约={}", shardKeys.size(), shard.getChannelName(), shard.getChaincodeName());
+            shardKeys.add(shard.getKey());
+        }
+        shardRouter = new ShardRouter(shardKeys, fabricProperties.getInitialShardCount());
+        shardLocator = new ShardLocator(shardRouter, fabricProperties.getShardLocationCacheSize());
+
+        operatorGatewayCache = new OperatorGatewayCache(fabricProperties.getIdentityCacheSize(),
+                fabricProperties.getIdentityFailureTtlMs());
 
         for (Map.Entry<String, FabricProperties.OrgConfig> entry : fabricProperties.getOrganizations().entrySet()) {
             String orgKey = entry.getKey();
             FabricProperties.OrgConfig orgConfig = entry.getValue();
-            Contract contract = initOrgContract(orgKey, orgConfig);
-            contractMap.put(orgKey.toUpperCase(), contract);
+            orgContextMap.put(orgKey.toUpperCase(), initOrgContext(orgKey, orgConfig));
         }
 
-        logger.info("多组织身份路由配置完毕！共加载 {} 个组织", contractMap.size());
+        logger.info("多组织身份路由配置完毕！共加载 {} 个组织", orgContextMap.size());
         logger.info("==================================================");
     }
 
-    private Contract initOrgContract(String orgKey, FabricProperties.OrgConfig orgConfig) throws Exception {
+    @PreDestroy
+    public void destroy() {
+        for (OrgContext org : orgContextMap.values()) {
+            if (org.channel != null) {
+                org.channel.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * 测试使用：以给定的网关与合约注册机构，不建立 gRPC 连接，需在 init() 之后调用
+     */
+    void registerOrg(String orgKey, GatewayContracts defaults) {
+        orgContextMap.put(orgKey.toUpperCase(), new OrgContext(orgKey, new FabricProperties.OrgConfig(), null, defaults));
+    }
+
+    private OrgContext initOrgContext(String orgKey, FabricProperties.OrgConfig orgConfig) throws Exception {
         logger.info(">> 正在加载机构身份: {} (Endpoint: {})", orgConfig.getMspId(), orgConfig.getPeerEndpoint());
 
         InputStream tlsCertStream = new ClassPathResource(orgConfig.getTlsCert()).getInputStream();
@@ -83,6 +129,22 @@ public class FabricGatewayService {
         PrivateKey privateKey = Identities.readPrivateKey(keyReader);
         Signer signer = Signers.newPrivateKeySigner(privateKey);
 
+        Gateway gateway = newGateway(channel, identity, signer);
+
+        // 同一机构的所有分片共用一个 gRPC 连接和网关身份
+        Contract[] contracts = new Contract[shards.size()];
+        for (int i = 0; i < shards.size(); i++) {
+            FabricProperties.ShardConfig shard = shards.get(i);
+            Network network = gateway.getNetwork(shard.getChannelName());
+            if ("org1".equalsIgnoreCase(orgKey)) {
+                startEventListener(network, shard.getChaincodeName());
+            }
+            contracts[i] = network.getContract(shard.getChaincodeName());
+        }
+        return new OrgContext(orgKey, orgConfig, channel, new GatewayContracts(gateway, contracts));
+    }
+
+    private Gateway newGateway(ManagedChannel channel, Identity identity, Signer signer) {
         int timeout = fabricProperties.getTimeoutSeconds();
         // 建议设大一点，防止批量上链超时
         if (timeout < 30)
@@ -91,7 +153,7 @@ public class FabricGatewayService {
         int finalTimeout = timeout;
         int finalTimeout1 = timeout;
         int finalTimeout2 = timeout;
-        Gateway gateway = Gateway.newInstance()
+        return Gateway.newInstance()
                 .identity(identity)
                 .signer(signer)
                 .connection(channel)
@@ -99,40 +161,142 @@ public class FabricGatewayService {
                 .endorseOptions(options -> options.withDeadlineAfter(finalTimeout1, TimeUnit.SECONDS))
                 .submitOptions(options -> options.withDeadlineAfter(finalTimeout2, TimeUnit.SECONDS))
                 .connect();
+    }
 
-        Network network = gateway.getNetwork(fabricProperties.getChannelName());
-
-        if ("org1".equalsIgnoreCase(orgKey)) {
-            startEventListener(network);
-        }
+    /**
+     * 写交易按机构、操作员身份和图书实际所在分片选择合约
+     */
+    private Contract getContract(String orgId, String operatorId, String bookId) throws Exception {
+        return getContracts(orgId, operatorId)[shardOf(orgId, bookId)];
+    }
 
-        return network.getContract(fabricProperties.getChaincodeName());
+    /**
+     * 按机构和操作员身份取各分片的合约，下标与分片配置顺序一致
+     * 未指定操作员时使用机构默认身份；操作员身份网关复用机构的 gRPC 连接，并缓存在 LRU 中。
+     */
+    private Contract[] getContracts(String orgId, String operatorId) throws Exception {
+        return getGatewayContracts(orgId, operatorId).getContracts();
     }
 
-    private Contract getContract(String orgId) {
+    private GatewayContracts getGatewayContracts(String orgId, String operatorId) throws Exception {
         if (orgId == null || orgId.trim().isEmpty()) {
             orgId = "ORG1";
         }
-        Contract contract = contractMap.get(orgId.toUpperCase());
-        if (contract == null) {
+        OrgContext org = orgContextMap.get(orgId.toUpperCase());
+        if (org == null) {
             throw new RuntimeException("非法的机构路由ID: " + orgId);
         }
-        return contract;
+        if (operatorId == null || operatorId.isEmpty()) {
+            return org.defaults;
+        }
+        // 先校验再查缓存，非法ID既不读盘也不占用缓存
+        if (!OPERATOR_ID_PATTERN.matcher(operatorId).matches()) {
+            throw new IllegalArgumentException("非法的操作员ID: " + operatorId);
+        }
+        return operatorGatewayCache.get(org.key + "/" + operatorId, () -> loadOperatorContracts(org, operatorId));
+    }
+
+    /**
+     * 从机构 keystore-dir/{operatorId}/ 加载操作员证书与私钥，并在机构共享连接上创建网关
+     */
+    private GatewayContracts loadOperatorContracts(OrgContext org, String operatorId) throws Exception {
+        String keystoreDir = org.config.getKeystoreDir();
+        if (keystoreDir == null || keystoreDir.isEmpty()) {
+            throw new IllegalArgumentException("机构 " + org.key + " 未配置操作员身份目录 (keystore-dir)");
+        }
+        Path dir = Paths.get(keystoreDir, operatorId);
+        Path certPath = dir.resolve("cert.pem");
+        Path keyPath = dir.resolve("key.pem");
+        if (!Files.isRegularFile(certPath) || !Files.isRegularFile(keyPath)) {
+            throw new IllegalArgumentException("未找到操作员身份: " + org.key + "/" + operatorId);
+        }
+
+        Identity identity;
+        Signer signer;
+        try (Reader certReader = Files.newBufferedReader(certPath, StandardCharsets.UTF_8);
+                Reader keyReader = Files.newBufferedReader(keyPath, StandardCharsets.UTF_8)) {
+            identity = new X509Identity(org.config.getMspId(), Identities.readX509Certificate(certReader));
+            signer = Signers.newPrivateKeySigner(Identities.readPrivateKey(keyReader));
+        }
+
+        Gateway gateway = newGateway(org.channel, identity, signer);
+        Contract[] contracts = new Contract[shards.size()];
+        for (int i = 0; i < shards.size(); i++) {
+            FabricProperties.ShardConfig shard = shards.get(i);
+            contracts[i] = gateway.getNetwork(shard.getChannelName()).getContract(shard.getChaincodeName());
+        }
+        logger.info("[{}] 已加载操作员身份: {}", org.key, operatorId);
+        return new GatewayContracts(gateway, contracts);
+    }
+
+    /**
+     * 写交易：拆分背书与提交两个阶段计时，并全量记录审计日志
+     */
+    private byte[] submit(String orgId, String operatorId, String function, String bookId, int size, String... args)
+            throws Exception {
+        Proposal proposal = getContract(orgId, operatorId, bookId).newProposal(function).addArguments(args).build();
+        long start = System.nanoTime();
+        long endorsed = 0;
+        boolean success = false;
+        try {
+            Transaction transaction = proposal.endorse();
+            endorsed = System.nanoTime();
+            byte[] result = transaction.submit();
+            success = true;
+            return result;
+        } finally {
+            long end = System.nanoTime();
+            long endorseMicros = ((endorsed != 0 ? endorsed : end) - start) / 1000;
+            long commitMicros = endorsed != 0 ? (end - endorsed) / 1000 : 0;
+            auditLogger.record(new AuditRecord(orgId, function, bookId, proposal.getTransactionId(), size,
+                    endorseMicros, commitMicros, (end - start) / 1000, success));
+        }
+    }
+
+    /**
+     * 只读查询：按采样率记录审计日志，未命中采样时不产生任何额外分配
+     */
+    private byte[] evaluate(String orgId, Contract contract, String function, String bookId) throws Exception {
+        if (!auditLogger.sampleRead()) {
+            return contract.evaluateTransaction(function, bookId);
+        }
+        Proposal proposal = contract.newProposal(function).addArguments(bookId).build();
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            byte[] result = proposal.evaluate();
+            success = true;
+            return result;
+        } finally {
+            long totalMicros = (System.nanoTime() - start) / 1000;
+            auditLogger.record(new AuditRecord(orgId, function, bookId, proposal.getTransactionId(), 1,
+                    totalMicros, 0, totalMicros, success));
+        }
     }
 
     /**
      * 1. 单本上链 (Updated)
      */
-    public String createBook(String orgId, String bookId, String bookName,
+    public String createBook(String orgId, String operatorId, String bookId, String bookName,
             String isbn, String author, Date publishDate, // 🌟 新增参数
             String publisher, String currentLocation,
             String operator, String operatorRole) throws Exception {
-        logger.debug("[{}] 发起【图书上链】交易: bookId={}, isbn={}", orgId, bookId, isbn);
+        byte[] result = submit(orgId, operatorId, "createBook", bookId, 1,
+                createBookArgs(bookId, bookName, isbn, author, publishDate, publisher, currentLocation,
+                        operator, operatorRole));
+        return new String(result, StandardCharsets.UTF_8);
+    }
 
-        String dateStr = (publishDate != null) ? dateFormat.format(publishDate) : dateFormat.format(new Date());
+    private String[] createBookArgs(String bookId, String bookName, String isbn, String author, Date publishDate,
+            String publisher, String currentLocation, String operator, String operatorRole) {
+        String dateStr;
+        // SimpleDateFormat 非线程安全
+        synchronized (dateFormat) {
+            dateStr = (publishDate != null) ? dateFormat.format(publishDate) : dateFormat.format(new Date());
+        }
 
         // 参数顺序必须严格对应合约 createBook
-        byte[] result = getContract(orgId).submitTransaction("createBook",
+        return new String[]{
                 bookId,
                 bookName,
                 isbn,
@@ -141,88 +305,367 @@ public class FabricGatewayService {
                 publisher,
                 currentLocation,
                 operator,
-                operatorRole);
-        String resultStr = new String(result, StandardCharsets.UTF_8);
-        logger.info("[{}] 图书上链交易成功: bookId={}", orgId, bookId);
-        return resultStr;
+                operatorRole};
     }
 
     /**
      * 🌟 新增：批量上链
      */
-    public String batchCreateBooks(String orgId, List<BookDTO> bookList) throws Exception {
-        logger.info("[{}] 发起【批量上链】交易，共 {} 本书", orgId, bookList.size());
-
-        // 将 List 转为 JSON 字符串
-        String jsonPayload = objectMapper.writeValueAsString(bookList);
-
-        byte[] result = getContract(orgId).submitTransaction("batchCreateBooks", jsonPayload);
-        String resultStr = new String(result, StandardCharsets.UTF_8);
-        logger.info("[{}] 批量上链成功: {}", orgId, resultStr);
-        return resultStr;
+    public List<ShardBatchResult> batchCreateBooks(String orgId, String operatorId, List<BookDTO> bookList)
+            throws Exception {
+        return submitBatch(orgId, operatorId, "batchCreateBooks", bookList);
     }
 
-    public String queryBook(String orgId, String bookId) throws Exception {
-        logger.debug("[{}] 查询图书信息: bookId={}", orgId, bookId);
-        byte[] result = getContract(orgId).evaluateTransaction("queryBook", bookId);
-        return new String(result, StandardCharsets.UTF_8);
+    /**
+     * 先查所属分片；所属分片没有记录时 (如新增分片后尚未迁移的图书) 依次回退到其它分片
+     */
+    public String queryBook(String orgId, String operatorId, String bookId) throws Exception {
+        Contract[] contracts = getContracts(orgId, operatorId);
+        int owner = shardRouter.route(bookId);
+        Exception ownerError = null;
+        try {
+            byte[] result = evaluate(orgId, contracts[owner], "queryBook", bookId);
+            if (result.length > 0) {
+                return new String(result, StandardCharsets.UTF_8);
+            }
+        } catch (GatewayException e) {
+            if (contracts.length == 1) {
+                throw e;
+            }
+            ownerError = e;
+        }
+        for (int i = 0; i < contracts.length; i++) {
+            if (i == owner) {
+                continue;
+            }
+            try {
+                byte[] result = evaluate(orgId, contracts[i], "queryBook", bookId);
+                if (result.length > 0) {
+                    logger.info("[{}] 图书 {} 不在所属分片 {}，已在分片 {} 查到", orgId, bookId,
+                            shards.get(owner).getKey(), shards.get(i).getKey());
+                    return new String(result, StandardCharsets.UTF_8);
+                }
+            } catch (GatewayException e) {
+                logger.debug("[{}] 分片 {} 未查到图书 {}: {}", orgId, shards.get(i).getKey(), bookId, e.getMessage());
+            }
+        }
+        if (ownerError != null) {
+            throw ownerError;
+        }
+        return "";
     }
 
-    public String updateBookLocation(String orgId, String bookId, String newLocation, String newStatus,
-            String operator, String operatorRole) throws Exception {
-        logger.debug("[{}] 发起【图书流转】交易: bookId={}, newLocation={}, operator={}", orgId, bookId, newLocation, operator);
-        byte[] result = getContract(orgId).submitTransaction("updateBookLocation", bookId, newLocation, newStatus,
+    public String updateBookLocation(String orgId, String operatorId, String bookId, String newLocation,
+            String newStatus, String operator, String operatorRole) throws Exception {
+        byte[] result = submit(orgId, operatorId, "updateBookLocation", bookId, 1, bookId, newLocation, newStatus,
                 operator, operatorRole);
-        String resultStr = new String(result, StandardCharsets.UTF_8);
-        logger.info("[{}] 图书流转交易成功: bookId={}", orgId, bookId);
-        return resultStr;
+        return new String(result, StandardCharsets.UTF_8);
     }
 
     /**
      * 🌟 新增：批量更新图书位置与流转状态
      */
-    public String batchUpdateBookLocation(String orgId, List<BookDTO> bookList) throws Exception {
-        logger.info("[{}] 发起【批量流转更新】交易，共 {} 本书", orgId, bookList.size());
+    public List<ShardBatchResult> batchUpdateBookLocation(String orgId, String operatorId, List<BookDTO> bookList)
+            throws Exception {
+        return submitBatch(orgId, operatorId, "batchUpdateBookLocation", bookList);
+    }
+
+    /**
+     * 批量交易按分片拆分提交
+     * 单分片时与原来一样整批原子提交，失败直接抛出。跨分片时在调用线程上依次背书并异步提交各分片子批量，
+     * 再统一等待提交状态，出块等待在分片间重叠；各分片子批量各自原子，整体不再原子，返回每个分片的执行结果。
+     */
+    private List<ShardBatchResult> submitBatch(String orgId, String operatorId, String function,
+            List<BookDTO> bookList) throws Exception {
+        List<List<BookDTO>> parts = splitByShard(orgId, bookList);
+        if (parts.size() == 1) {
+            List<BookDTO> part = parts.get(0);
+            // 将 List 转为 JSON 字符串，以匹配智能合约中期待的 JSON Array 参数
+            byte[] result = submit(orgId, operatorId, function, part.get(0).getId(), part.size(),
+                    objectMapper.writeValueAsString(part));
+            BatchPart batchPart = new BatchPart(part);
+            batchPart.result.setShard(shards.get(shardOf(orgId, part.get(0).getId())).getKey());
+            batchPart.result.setStatus(ShardBatchResult.COMMITTED);
+            batchPart.result.setResult(new String(result, StandardCharsets.UTF_8));
+            return List.of(batchPart.result);
+        }
+
+        Contract[] contracts = getContracts(orgId, operatorId);
+        List<BatchPart> batchParts = new ArrayList<>();
+        for (List<BookDTO> part : parts) {
+            BatchPart batchPart = new BatchPart(part);
+            batchParts.add(batchPart);
+            int shard = shardOf(orgId, part.get(0).getId());
+            batchPart.result.setShard(shards.get(shard).getKey());
+            Transaction transaction;
+            try {
+                Proposal proposal = contracts[shard].newProposal(function)
+                        .addArguments(objectMapper.writeValueAsString(part)).build();
+                batchPart.result.setTxId(proposal.getTransactionId());
+                batchPart.start = System.nanoTime();
+                transaction = proposal.endorse();
+                batchPart.endorsed = System.nanoTime();
+            } catch (Exception e) {
+                // 背书失败：交易没有发往排序节点，可以安全重试
+                batchPart.fail(ShardBatchResult.FAILED, e);
+                continue;
+            }
+            try {
+                batchPart.commit = transaction.submitAsync();
+            } catch (Exception e) {
+                // 提交超时或连接中断时排序节点可能已经收到交易，重试可能重复生效，需先按 txId 核对
+                batchPart.fail(ShardBatchResult.UNKNOWN, e);
+            }
+        }
+
+        for (BatchPart batchPart : batchParts) {
+            if (batchPart.commit == null) {
+                continue;
+            }
+            try {
+                Status status = batchPart.commit.getStatus();
+                if (status.isSuccessful()) {
+                    batchPart.result.setStatus(ShardBatchResult.COMMITTED);
+                    batchPart.result.setResult(new String(batchPart.commit.getResult(), StandardCharsets.UTF_8));
+                } else {
+                    batchPart.result.setStatus(ShardBatchResult.FAILED);
+                    batchPart.result.setError("交易验证失败: " + status.getCode());
+                }
+            } catch (CommitStatusException e) {
+                // 已提交到排序节点但无法确认是否上链
+                batchPart.fail(ShardBatchResult.UNKNOWN, e);
+            }
+        }
+
+        List<ShardBatchResult> results = new ArrayList<>();
+        for (BatchPart batchPart : batchParts) {
+            ShardBatchResult result = batchPart.result;
+            if (batchPart.start != 0) {
+                long end = System.nanoTime();
+                long endorsed = batchPart.endorsed != 0 ? batchPart.endorsed : end;
+                auditLogger.record(new AuditRecord(orgId, function, result.getBookIds().get(0), result.getTxId(),
+                        result.getBookIds().size(), (endorsed - batchPart.start) / 1000, (end - endorsed) / 1000,
+                        (end - batchPart.start) / 1000, ShardBatchResult.COMMITTED.equals(result.getStatus())));
+            }
+            if (!ShardBatchResult.COMMITTED.equals(result.getStatus())) {
+                logger.error("[{}] 分片批量交易未成功: shard={}, status={}, txId={}, bookIds={}, error={}", orgId,
+                        result.getShard(), result.getStatus(), result.getTxId(), result.getBookIds(), result.getError());
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * 写请求中的每本图书都必须带 bookId：多分片时按它路由，缺失时无法确定交易发往哪个分片
+     */
+    public static void requireBookIds(List<BookDTO> bookList) {
+        for (int i = 0; i < bookList.size(); i++) {
+            String bookId = bookList.get(i).getId();
+            if (bookId == null || bookId.isEmpty()) {
+                throw new IllegalArgumentException("请求中第 " + (i + 1) + " 本图书缺少 bookId");
+            }
+        }
+    }
+
+    /**
+     * 发件箱投递使用：按合约参数构造写交易并完成背书，提交与查询提交状态由调用方负责，
+     * 以便提交或查询失败后继续使用同一笔交易 (同一 txId) 而不是重新发起。批量请求中的图书必须属于同一分片。
+     */
+    public Transaction endorse(String orgId, String operatorId, String function, List<BookDTO> books)
+            throws Exception {
+        BookDTO book = books.get(0);
+        String[] args;
+        switch (function) {
+            case "createBook":
+                args = createBookArgs(book.getId(), book.getName(), book.getIsbn(), book.getAuthor(),
+                        book.getPublishDate(), book.getPublisher(), book.getLocation(),
+                        book.getOperator(), book.getOperatorRole());
+                break;
+            case "updateBookLocation":
+                args = new String[]{book.getId(), book.getLocation(), book.getStatus(),
+                        book.getOperator(), book.getOperatorRole()};
+                break;
+            case "deleteBook":
+                args = new String[]{book.getId()};
+                break;
+            case "batchCreateBooks":
+            case "batchUpdateBookLocation":
+                if (splitByShard(orgId, books).size() > 1) {
+                    throw new IllegalArgumentException("批量请求跨越多个分片，需先按分片拆分");
+                }
+                args = new String[]{objectMapper.writeValueAsString(books)};
+                break;
+            default:
+                throw new IllegalArgumentException("不支持的写操作: " + function);
+        }
+        return getContract(orgId, operatorId, book.getId()).newProposal(function).addArguments(args).build()
+                .endorse();
+    }
 
-        // 将 List 转为 JSON 字符串，以匹配智能合约中期待的 JSON Array 参数
-        String jsonPayload = objectMapper.writeValueAsString(bookList);
+    /**
+     * 发件箱重启后使用：用原签名身份从 Transaction.getBytes() 恢复已背书的交易，txId 不变，可直接重发或查询提交状态
+     */
+    public Transaction restoreTransaction(String orgId, String operatorId, byte[] bytes) throws Exception {
+        return getGatewayContracts(orgId, operatorId).getGateway().newTransaction(bytes);
+    }
 
-        byte[] result = getContract(orgId).submitTransaction("batchUpdateBookLocation", jsonPayload);
-        String resultStr = new String(result, StandardCharsets.UTF_8);
-        logger.info("[{}] 批量流转更新成功: {}", orgId, resultStr);
-        return resultStr;
+    /**
+     * 校验机构与操作员身份：加载并缓存操作员网关，身份不存在时抛出与同步上链相同的错误
+     */
+    public void resolveOperator(String orgId, String operatorId) throws Exception {
+        getContracts(orgId, operatorId);
     }
 
-    public String getBookHistory(String orgId, String bookId) throws Exception {
-        logger.debug("[{}] 查询图书历史溯源数据: bookId={}", orgId, bookId);
-        byte[] result = getContract(orgId).evaluateTransaction("getBookHistory", bookId);
-        return new String(result, StandardCharsets.UTF_8);
+    /**
+     * 批量交易只能以一个身份签名：所有图书的 operatorId 必须一致 (均未填写时使用机构默认身份)，返回该 operatorId
+     */
+    public static String batchOperatorId(List<BookDTO> bookList) {
+        String operatorId = emptyToNull(bookList.get(0).getOperatorId());
+        for (int i = 1; i < bookList.size(); i++) {
+            if (!Objects.equals(operatorId, emptyToNull(bookList.get(i).getOperatorId()))) {
+                throw new IllegalArgumentException("批量请求中第 " + (i + 1) + " 本图书的 operatorId 与首本不一致，"
+                        + "同一批量只能使用一个操作员身份");
+            }
+        }
+        return operatorId;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    /**
+     * 写交易发往的分片下标：已有图书所在的分片，新书为当前归属分片 (见 ShardLocator)
+     */
+    public int shardOf(String orgId, String bookId) throws Exception {
+        return shardLocator.locate(bookId, shard -> bookExists(orgId, shard, bookId));
+    }
+
+    /**
+     * 以机构默认身份探测图书是否在指定分片上；peer 不可达等无法判断的情况直接抛出
+     */
+    private boolean bookExists(String orgId, int shard, String bookId) throws Exception {
+        try {
+            return getContracts(orgId, null)[shard].evaluateTransaction("queryBook", bookId).length > 0;
+        } catch (GatewayException e) {
+            io.grpc.Status.Code code = e.getStatus().getCode();
+            if (code == io.grpc.Status.Code.UNAVAILABLE || code == io.grpc.Status.Code.DEADLINE_EXCEEDED) {
+                throw e;
+            }
+            // 合约返回图书不存在
+            return false;
+        }
+    }
+
+    /**
+     * 按分片拆分图书列表，保持各分片内的原始顺序；未配置多分片时原样返回
+     * 多分片时先校验所有 bookId，避免拆分到一半才失败。
+     */
+    public List<List<BookDTO>> splitByShard(String orgId, List<BookDTO> bookList) throws Exception {
+        if (shardRouter.getShardCount() == 1) {
+            return List.of(bookList);
+        }
+        requireBookIds(bookList);
+        List<List<BookDTO>> byShard = new ArrayList<>();
+        for (int i = 0; i < shardRouter.getShardCount(); i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (BookDTO book : bookList) {
+            byShard.get(shardOf(orgId, book.getId())).add(book);
+        }
+        byShard.removeIf(List::isEmpty);
+        return byShard;
+    }
+
+    /**
+     * 历史记录无法随图书迁移：查询所有分片并按时间戳合并，新增分片前后的记录都能查到
+     */
+    public String getBookHistory(String orgId, String operatorId, String bookId) throws Exception {
+        Contract[] contracts = getContracts(orgId, operatorId);
+        if (contracts.length == 1) {
+            return new String(evaluate(orgId, contracts[0], "getBookHistory", bookId), StandardCharsets.UTF_8);
+        }
+        List<Map<String, Object>> merged = new ArrayList<>();
+        for (Contract contract : contracts) {
+            byte[] result = evaluate(orgId, contract, "getBookHistory", bookId);
+            if (result.length > 0) {
+                merged.addAll(objectMapper.readValue(result, new TypeReference<List<Map<String, Object>>>() {
+                }));
+            }
+        }
+        // 合约返回的时间戳为 ISO-8601 字符串，可直接按字典序排序
+        merged.sort(Comparator.comparing(record -> String.valueOf(record.get("timestamp"))));
+        return objectMapper.writeValueAsString(merged);
     }
 
-    public String deleteBook(String orgId, String bookId) throws Exception {
-        logger.debug("[{}] 发起【图书删除】交易: bookId={}", orgId, bookId);
-        getContract(orgId).submitTransaction("deleteBook", bookId);
-        String result = "图书 [" + bookId + "] 已成功从当前账本状态中删除！";
-        logger.info("[{}] 图书删除交易成功: bookId={}", orgId, bookId);
-        return result;
+    public String deleteBook(String orgId, String operatorId, String bookId) throws Exception {
+        submit(orgId, operatorId, "deleteBook", bookId, 1, bookId);
+        return "图书 [" + bookId + "] 已成功从当前账本状态中删除！";
     }
 
-    private void startEventListener(Network network) {
-        logger.info("正在启动区块链全局事件监听器...");
-        new Thread(() -> {
+    private void startEventListener(Network network, String chaincodeName) {
+        logger.info("正在启动区块链全局事件监听器: {}/{}", network.getName(), chaincodeName);
+        Thread listener = new Thread(() -> {
             try {
-                CloseableIterator<ChaincodeEvent> eventIter = network
-                        .getChaincodeEvents(fabricProperties.getChaincodeName());
+                CloseableIterator<ChaincodeEvent> eventIter = network.getChaincodeEvents(chaincodeName);
                 logger.info("监听器已就绪，正在等待区块链网络广播...");
                 while (eventIter.hasNext()) {
                     ChaincodeEvent event = eventIter.next();
-                    String payload = new String(event.getPayload(), StandardCharsets.UTF_8);
-                    logger.info("[区块链实时广播] 事件类型: {}, 交易 ID: {}, 数据: {}",
-                            event.getEventName(), event.getTransactionId(), payload);
+                    // 事件负载可能很大，仅在 DEBUG 下解码输出
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("[区块链实时广播] 事件类型: {}, 交易 ID: {}, 数据: {}",
+                                event.getEventName(), event.getTransactionId(),
+                                new String(event.getPayload(), StandardCharsets.UTF_8));
+                    }
                 }
             } catch (Exception e) {
                 logger.error("事件监听器异常: {}", e.getMessage(), e);
             }
-        }).start();
+        }, "fabric-event-listener-" + network.getName());
+        // 守护线程，避免 CDS 训练 (spring.context.exit=onRefresh) 等场景下阻止 JVM 退出
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    /**
+     * 跨分片批量中的一个分片子批量及其提交进度
+     */
+    private static final class BatchPart {
+        private final ShardBatchResult result = new ShardBatchResult();
+        private SubmittedTransaction commit;
+        private long start;
+        private long endorsed;
+
+        private BatchPart(List<BookDTO> books) {
+            List<String> bookIds = new ArrayList<>();
+            for (BookDTO book : books) {
+                bookIds.add(book.getId());
+            }
+            result.setBookIds(bookIds);
+        }
+
+        private void fail(String status, Exception e) {
+            result.setStatus(status);
+            result.setError(e.getMessage());
+        }
+    }
+
+    /**
+     * 机构级共享资源：gRPC 连接与默认身份下的各分片合约
+     */
+    private static final class OrgContext {
+        private final String key;
+        private final FabricProperties.OrgConfig config;
+        private final ManagedChannel channel;
+        private final GatewayContracts defaults;
+
+        private OrgContext(String orgKey, FabricProperties.OrgConfig config, ManagedChannel channel,
+                GatewayContracts defaults) {
+            this.key = orgKey.toUpperCase();
+            this.config = config;
+            this.channel = channel;
+            this.defaults = defaults;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,27 @@
+package com.arsc.bookchaingateway.trace.service;
+
+import org.hyperledger.fabric.client.Contract;
+import org.hyperledger.fabric.client.Gateway;
+
+/**
+ * 同一签名身份下的网关及其各分片合约，下标与分片配置顺序一致
+ * 网关本身用于从字节恢复已背书的交易 (发件箱重启后重发同一 txId)。
+ */
+final class GatewayContracts {
+
+    private final Gateway gateway;
+    private final Contract[] contracts;
+
+    GatewayContracts(Gateway gateway, Contract[] contracts) {
+        this.gateway = gateway;
+        this.contracts = contracts;
+    }
+
+    Gateway getGateway() {
+        return gateway;
+    }
+
+    Contract[] getContracts() {
+        return contracts;
+    }
+}
@@ -0,0 +1,117 @@
+package com.arsc.bookchaingateway.trace.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongSupplier;
+
+/**
+ * 操作员身份网关的 LRU 缓存
+ * 缓存已解析好证书/私钥并绑定到机构共享 gRPC 连接上的各分片合约，热路径上不再重复解析 PEM。
+ * 同一操作员的并发未命中只有一个线程执行加载，其余线程等待同一个 Future；
+ * 加载失败 (如身份不存在) 的结果也缓存 failureTtlMs，避免非法操作员ID的请求反复读盘。
+ * 失败结果单独放在一个同样有界的 LRU 中，大量不存在的操作员ID不会把已加载的网关挤出缓存。
+ * 被淘汰的网关无需关闭：连接由机构持有，网关本身不占用额外资源。
+ */
+class OperatorGatewayCache {
+
+    @FunctionalInterface
+    interface Loader {
+        GatewayContracts load() throws Exception;
+    }
+
+    private static final class Failure {
+        private final Throwable error;
+        // 加载失败的时间 (System.nanoTime)
+        private final long failedAt;
+
+        private Failure(Throwable error, long failedAt) {
+            this.error = error;
+            this.failedAt = failedAt;
+        }
+    }
+
+    private final long failureTtlNanos;
+    private final LongSupplier clock;
+    // 以下三个 Map 都受 loaded 保护
+    private final Map<String, GatewayContracts> loaded;
+    private final Map<String, Failure> failures;
+    private final Map<String, CompletableFuture<GatewayContracts>> loading = new HashMap<>();
+
+    OperatorGatewayCache(int maxSize, long failureTtlMs) {
+        this(maxSize, failureTtlMs, System::nanoTime);
+    }
+
+    OperatorGatewayCache(int maxSize, long failureTtlMs, LongSupplier clock) {
+        this.failureTtlNanos = Math.max(0, failureTtlMs) * 1_000_000;
+        this.clock = clock;
+        this.loaded = lru(Math.max(1, maxSize));
+        this.failures = lru(Math.max(1, maxSize));
+    }
+
+    private static <V> Map<String, V> lru(int maxSize) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * 命中直接返回 (加载中则等待)；未命中时由当前线程在锁外加载，避免磁盘读取阻塞其它操作员的请求
+     */
+    GatewayContracts get(String key, Loader loader) throws Exception {
+        CompletableFuture<GatewayContracts> future;
+        boolean owner = false;
+        synchronized (loaded) {
+            GatewayContracts contracts = loaded.get(key);
+            if (contracts != null) {
+                return contracts;
+            }
+            Failure failure = failures.get(key);
+            if (failure != null) {
+                if (clock.getAsLong() - failure.failedAt < failureTtlNanos) {
+                    throw rethrow(failure.error);
+                }
+                failures.remove(key);
+            }
+            future = loading.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                loading.put(key, future);
+                owner = true;
+            }
+        }
+        if (owner) {
+            try {
+                GatewayContracts contracts = loader.load();
+                synchronized (loaded) {
+                    loaded.put(key, contracts);
+                    loading.remove(key);
+                }
+                future.complete(contracts);
+            } catch (Throwable e) {
+                synchronized (loaded) {
+                    failures.put(key, new Failure(e, clock.getAsLong()));
+                    loading.remove(key);
+                }
+                future.completeExceptionally(e);
+            }
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static Exception rethrow(Throwable error) {
+        if (error instanceof Exception) {
+            return (Exception) error;
+        }
+        throw (Error) error;
+    }
+}
@@ -0,0 +1,62 @@
+package com.arsc.bookchaingateway.trace.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 写交易的分片定位
+ * 新增分片后约 1/N 的 bookId 在环上改变归属，但链上数据不会随之迁移，这些图书仍在它们写入时那一代环的归属分片上。
+ * 写入前按上线先后探测较早各代的候选分片，查到记录即发往该分片；都查不到 (新书或已在当前分片) 时发往当前归属分片。
+ * 这样流转、删除不会因找不到图书而失败，重复的 createBook 也会在原分片上被合约拒绝，而不是在新分片上再建一份。
+ * 定位结果缓存在 LRU 中，同一本书只探测一次；归属未变化的图书不探测。
+ */
+class ShardLocator {
+
+    @FunctionalInterface
+    interface Probe {
+        boolean exists(int shard) throws Exception;
+    }
+
+    private final ShardRouter router;
+    private final int maxSize;
+    private final Map<String, Integer> located;
+
+    ShardLocator(ShardRouter router, int maxSize) {
+        this.router = router;
+        this.maxSize = Math.max(1, maxSize);
+        this.located = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > ShardLocator.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * 探测出错 (如 peer 不可达) 时直接抛出，不能当作图书不存在而写到当前分片
+     */
+    int locate(String bookId, Probe probe) throws Exception {
+        int[] candidates = router.candidates(bookId);
+        int current = candidates[candidates.length - 1];
+        if (candidates.length == 1) {
+            return current;
+        }
+        synchronized (located) {
+            Integer cached = located.get(bookId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        int shard = current;
+        for (int i = 0; i < candidates.length - 1; i++) {
+            if (probe.exists(candidates[i])) {
+                shard = candidates[i];
+                break;
+            }
+        }
+        synchronized (located) {
+            located.put(bookId, shard);
+        }
+        return shard;
+    }
+}
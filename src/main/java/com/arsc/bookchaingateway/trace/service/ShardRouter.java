@@ -0,0 +1,116 @@
+package com.arsc.bookchaingateway.trace.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * bookId -> 分片 的一致性哈希路由
+ * 每个分片在环上放置若干虚拟节点，新增分片时只有约 1/N 的 bookId 会改变归属。
+ * 环以有序数组保存，路由时只做一次二分查找。
+ * 分片只能在列表末尾追加：前 k 个分片构成的环就是只有 k 个分片时的那一代环，
+ * 据此可以算出一本书在历代环上的归属 (candidates)，用于找到新增分片前写入的图书。
+ */
+public class ShardRouter {
+
+    private static final int VIRTUAL_NODES = 160;
+
+    private final long[] ring;
+    private final int[] owners;
+    private final int shardCount;
+    // 较早各代的环 (分片数 initialShardCount .. shardCount-1)，按上线先后排列
+    private final ShardRouter[] previous;
+
+    public ShardRouter(List<String> shardKeys) {
+        this(shardKeys, shardKeys.size());
+    }
+
+    /**
+     * @param initialShardCount 首次上线时的分片数，之后的分片按顺序逐个追加
+     */
+    public ShardRouter(List<String> shardKeys, int initialShardCount) {
+        if (shardKeys.isEmpty()) {
+            throw new IllegalArgumentException("至少需要配置一个分片");
+        }
+        this.shardCount = shardKeys.size();
+        long[][] nodes = new long[shardCount * VIRTUAL_NODES][];
+        int n = 0;
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                nodes[n++] = new long[]{hash(shardKeys.get(shard) + "#" + v), shard};
+            }
+        }
+        Arrays.sort(nodes, (a, b) -> Long.compare(a[0], b[0]));
+        ring = new long[nodes.length];
+        owners = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            ring[i] = nodes[i][0];
+            owners[i] = (int) nodes[i][1];
+        }
+        int first = Math.max(1, Math.min(initialShardCount, shardCount));
+        previous = new ShardRouter[shardCount - first];
+        for (int count = first; count < shardCount; count++) {
+            previous[count - first] = new ShardRouter(shardKeys.subList(0, count));
+        }
+    }
+
+    public int route(String bookId) {
+        if (shardCount == 1) {
+            return 0;
+        }
+        if (bookId == null || bookId.isEmpty()) {
+            throw new IllegalArgumentException("多分片模式下 bookId 不能为空");
+        }
+        int index = Arrays.binarySearch(ring, hash(bookId));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == ring.length ? 0 : index];
+    }
+
+    /**
+     * bookId 在历代环上的归属分片 (去重)，按分片上线先后排列，最后一个即当前归属 route(bookId)
+     * 图书一定位于它写入时那一代环的归属分片上；只有一个候选时说明新增分片没有改变它的归属。
+     */
+    public int[] candidates(String bookId) {
+        int current = route(bookId);
+        if (previous.length == 0) {
+            return new int[]{current};
+        }
+        int[] result = new int[previous.length + 1];
+        int n = 0;
+        for (ShardRouter router : previous) {
+            int shard = router.route(bookId);
+            boolean seen = shard == current;
+            for (int i = 0; i < n && !seen; i++) {
+                seen = result[i] == shard;
+            }
+            if (!seen) {
+                result[n++] = shard;
+            }
+        }
+        result[n++] = current;
+        return Arrays.copyOf(result, n);
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * 64 位 FNV-1a，再经 murmur3 fmix64 打散
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,89 @@
+package com.arsc.bookchaingateway;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 构建产物的冷启动基准，在 mvn -Pstartup-bench verify 的 integration-test 阶段运行
+ * 以独立进程启动 CDS 解压目录 (有/无共享归档各测一组) 和原生镜像，
+ * 通过 spring.context.exit=onRefresh 在上下文刷新完成后立即退出，测量进程从启动到退出的耗时。
+ * peer 连接是惰性建立的，进程在连接 peer 之前就已退出，因此这里不需要 peer 端点。
+ * 产物不存在时跳过：先 mvn -Pcds package 或 mvn -Pnative native:compile，也可与 -Pcds 一起执行 verify。
+ */
+@EnabledIfSystemProperty(named = "startup.bench", matches = "true")
+class StartupArtifactBenchmarkIT {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupArtifactBenchmarkIT.class);
+
+    private final Path buildDir = Paths.get(System.getProperty("startup.bench.build-dir", "target"));
+    private final String jarName = System.getProperty("startup.bench.jar", "book-chain-gateway-0.0.1-SNAPSHOT.jar");
+    private final int runs = Integer.getInteger("startup.bench.runs", 5);
+    private final long budgetMs = Long.getLong("startup.bench.budget-ms", 15000);
+
+    @Test
+    void cdsArchiveStartupWithinBudget() throws Exception {
+        Path cdsDir = buildDir.resolve("cds");
+        assumeTrue(Files.exists(cdsDir.resolve("application.jsa")), "未找到 CDS 归档，先执行 mvn -Pcds package");
+
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        // 与训练时保持相同的相对 classpath，否则 JVM 会拒绝使用归档
+        long plain = median(cdsDir, "cds-off",
+                java, "-Dspring.context.exit=onRefresh", "-jar", jarName);
+        long shared = median(cdsDir, "cds-on",
+                java, "-XX:SharedArchiveFile=application.jsa",
+                "-Dspring.context.exit=onRefresh", "-jar", jarName);
+        logger.info("[startup-bench] cds extracted jar: withoutArchive={}ms withArchive={}ms", plain, shared);
+
+        assertTrue(shared <= budgetMs, "CDS 启动耗时 " + shared + "ms 超出预算 " + budgetMs + "ms");
+    }
+
+    @Test
+    void nativeImageStartupWithinBudget() throws Exception {
+        Path binary = buildDir.resolve(System.getProperty("startup.bench.native-image", "book-chain-gateway"));
+        assumeTrue(Files.isExecutable(binary), "未找到原生镜像，先执行 mvn -Pnative native:compile");
+
+        long time = median(buildDir, "native", binary.toAbsolutePath().toString(), "-Dspring.context.exit=onRefresh");
+        logger.info("[startup-bench] native image: {}ms", time);
+
+        assertTrue(time <= budgetMs, "原生镜像启动耗时 " + time + "ms 超出预算 " + budgetMs + "ms");
+    }
+
+    /**
+     * 重复启动 runs 次，返回进程耗时中位数；子进程输出写到 target/startup-bench-{name}.log
+     */
+    private long median(Path workDir, String name, String... command) throws Exception {
+        Path output = buildDir.resolve("startup-bench-" + name + ".log").toAbsolutePath();
+        List<Long> samples = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command)
+                    .directory(workDir.toFile())
+                    .redirectErrorStream(true)
+                    .redirectOutput(output.toFile())
+                    .start();
+            if (!process.waitFor(2, TimeUnit.MINUTES)) {
+                process.destroyForcibly();
+                throw new AssertionError(name + " 启动超时，输出见 " + output);
+            }
+            samples.add((System.nanoTime() - start) / 1_000_000);
+            assertEquals(0, process.exitValue(), name + " 启动失败，输出见 " + output);
+        }
+        long[] sorted = samples.stream().mapToLong(Long::longValue).sorted().toArray();
+        logger.info("[startup-bench] {} samples={}", name, Arrays.toString(sorted));
+        return sorted[sorted.length / 2];
+    }
+}
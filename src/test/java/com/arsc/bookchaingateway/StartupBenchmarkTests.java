@@ -0,0 +1,59 @@
+package com.arsc.bookchaingateway;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 启动耗时基准，仅在 mvn -Pstartup-bench test 时运行
+ * 各机构 peer 指向本地 TLS 端点 (TlsTestPeer)，握手可以成功但不提供 Fabric 服务，
+ * 只衡量同一 JVM 内 Spring 上下文刷新与机构身份初始化的耗时。
+ * CDS / 原生镜像产物的启动耗时见 StartupArtifactBenchmarkIT。
+ */
+@EnabledIfSystemProperty(named = "startup.bench", matches = "true")
+class StartupBenchmarkTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupBenchmarkTests.class);
+
+    @Test
+    void startupWithinBudget() throws Exception {
+        int runs = Integer.getInteger("startup.bench.runs", 5);
+        long budgetMs = Long.getLong("startup.bench.budget-ms", 15000);
+
+        try (TlsTestPeer peer = new TlsTestPeer()) {
+            // 以命令行参数传入，优先级高于 application.yml (builder.properties 只是默认值，会被覆盖)
+            List<String> argList = new ArrayList<>(List.of("--server.port=0"));
+            for (String org : new String[]{"org1", "org2", "org3"}) {
+                argList.add("--fabric.organizations." + org + ".peer-endpoint=" + peer.getEndpoint());
+                argList.add("--fabric.organizations." + org + ".tls-cert=" + TlsTestPeer.TLS_CERT_RESOURCE);
+            }
+            String[] args = argList.toArray(new String[0]);
+            long[] samples = new long[runs];
+            for (int i = 0; i < runs; i++) {
+                long start = System.nanoTime();
+                ConfigurableApplicationContext context = new SpringApplicationBuilder(BookChainGatewayApplication.class)
+                        .run(args);
+                samples[i] = (System.nanoTime() - start) / 1_000_000;
+                context.close();
+            }
+
+            // 第一次为冷启动，后续为同一 JVM 内的热启动
+            long cold = samples[0];
+            long[] warm = Arrays.copyOfRange(samples, 1, runs);
+            Arrays.sort(warm);
+            logger.info("[startup-bench] in-jvm cold={}ms warmMedian={}ms samples={}",
+                    cold, warm.length > 0 ? warm[warm.length / 2] : cold, Arrays.toString(samples));
+
+            assertTrue(cold <= budgetMs, "冷启动耗时 " + cold + "ms 超出预算 " + budgetMs + "ms");
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.arsc.bookchaingateway;
+
+import io.grpc.Grpc;
+import io.grpc.Server;
+import io.grpc.TlsServerCredentials;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.openssl.jcajce.JcaPKCS8Generator;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基准测试用的本地 TLS 端点
+ * 启动时生成自签名证书 (SAN 覆盖各机构的 override-auth)，并写到测试 classpath 下，
+ * 供网关以 tls-cert 信任。该端点只完成 TLS/HTTP2 握手，不实现任何 Fabric 服务，
+ * 网关的调用 (如事件订阅) 会得到 UNIMPLEMENTED。
+ */
+class TlsTestPeer implements Closeable {
+
+    // 相对测试 classpath 根目录，可直接作为 fabric.organizations.*.tls-cert 的值
+    static final String TLS_CERT_RESOURCE = "bench/peer-tls.pem";
+
+    private static final String[] HOST_NAMES = {
+            "localhost", "peer0.org1.example.com", "peer0.org2.example.com", "peer0.org3.example.com"
+    };
+
+    private final Server server;
+
+    TlsTestPeer() throws Exception {
+        Path classpathRoot = Paths.get(TlsTestPeer.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        Path certFile = classpathRoot.resolve(TLS_CERT_RESOURCE);
+        Path keyFile = certFile.resolveSibling("peer-tls.key");
+        Files.createDirectories(certFile.getParent());
+        writeSelfSigned(certFile, keyFile);
+
+        server = Grpc.newServerBuilderForPort(0, TlsServerCredentials.create(certFile.toFile(), keyFile.toFile()))
+                .build()
+                .start();
+    }
+
+    String getEndpoint() {
+        return "localhost:" + server.getPort();
+    }
+
+    @Override
+    public void close() {
+        server.shutdownNow();
+        try {
+            server.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void writeSelfSigned(Path certFile, Path keyFile) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = generator.generateKeyPair();
+
+        GeneralName[] names = new GeneralName[HOST_NAMES.length];
+        for (int i = 0; i < HOST_NAMES.length; i++) {
+            names[i] = new GeneralName(GeneralName.dNSName, HOST_NAMES[i]);
+        }
+        X500Name subject = new X500Name("CN=startup-bench-peer");
+        long now = System.currentTimeMillis();
+        X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(subject, BigInteger.valueOf(now),
+                new Date(now - TimeUnit.HOURS.toMillis(1)), new Date(now + TimeUnit.DAYS.toMillis(1)),
+                subject, keyPair.getPublic())
+                .addExtension(Extension.subjectAlternativeName, false, new GeneralNames(names));
+        X509CertificateHolder holder = builder.build(
+                new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate()));
+
+        writePem(certFile, holder);
+        // gRPC 服务端只接受 PKCS#8 格式的私钥
+        writePem(keyFile, new JcaPKCS8Generator(keyPair.getPrivate(), null));
+    }
+
+    private static void writePem(Path file, Object object) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+                JcaPEMWriter pemWriter = new JcaPEMWriter(writer)) {
+            pemWriter.writeObject(object);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.arsc.bookchaingateway.trace.audit;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import com.arsc.bookchaingateway.trace.config.AuditProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 审计管道测试：AUDIT logger 挂上内存 appender，可以让写线程卡住，模拟磁盘写入变慢
+ */
+class AuditLoggerTests {
+
+    private final AuditProperties auditProperties = new AuditProperties();
+    private final ch.qos.logback.classic.Logger auditLog =
+            (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("AUDIT");
+    private final CapturingAppender appender = new CapturingAppender();
+    private AuditLogger auditLogger;
+
+    @BeforeEach
+    void setUp() {
+        appender.start();
+        auditLog.addAppender(appender);
+        auditLog.setAdditive(false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        appender.release.countDown();
+        if (auditLogger != null) {
+            auditLogger.stop();
+        }
+        auditLog.detachAppender(appender);
+        auditLog.setAdditive(true);
+        appender.stop();
+    }
+
+    @Test
+    void dropsAndCountsWhenBufferIsFullWithoutBlocking() throws Exception {
+        auditProperties.setBufferSize(16);
+        auditLogger = start();
+        appender.block = true;
+
+        // 写线程取走第一条后卡在 appender 中，之后的记录只能留在缓冲区
+        auditLogger.record(record("B0"));
+        assertTrue(appender.entered.await(5, TimeUnit.SECONDS));
+
+        long begin = System.nanoTime();
+        for (int i = 1; i <= 16 + 5; i++) {
+            auditLogger.record(record("B" + i));
+        }
+        assertTrue(System.nanoTime() - begin < TimeUnit.SECONDS.toNanos(1), "缓冲区满时 record 不应阻塞");
+        assertEquals(5, auditLogger.getDroppedCount());
+
+        appender.release.countDown();
+        auditLogger.stop();
+        assertEquals(17, appender.records().size());
+        assertTrue(appender.messages.stream().anyMatch(message -> message.contains("累计丢弃 5 条")));
+    }
+
+    @Test
+    void sampleReadHonoursTheConfiguredRate() {
+        auditProperties.setReadSampleRate(0);
+        auditLogger = start();
+        assertEquals(0, sampled(10000));
+
+        auditProperties.setReadSampleRate(1);
+        assertEquals(10000, sampled(10000));
+
+        auditProperties.setReadSampleRate(0.5);
+        int hits = sampled(10000);
+        // 标准差约 50，±500 的区间几乎不可能误报
+        assertTrue(hits > 4500 && hits < 5500, "采样数偏离采样率: " + hits);
+    }
+
+    @Test
+    void sampleReadIsFalseWhenDisabled() {
+        auditProperties.setEnabled(false);
+        auditProperties.setReadSampleRate(1);
+        auditLogger = start();
+        assertFalse(auditLogger.isEnabled());
+        assertEquals(0, sampled(100));
+        auditLogger.record(record("B0"));
+        assertEquals(0, appender.records().size());
+    }
+
+    @Test
+    void stopDrainsBufferedRecords() {
+        auditProperties.setBufferSize(1024);
+        auditLogger = start();
+        for (int i = 0; i < 1000; i++) {
+            auditLogger.record(record("B" + i));
+        }
+        auditLogger.stop();
+        assertEquals(1000, appender.records().size());
+        assertEquals(0, auditLogger.getDroppedCount());
+    }
+
+    private AuditLogger start() {
+        AuditLogger logger = new AuditLogger(auditProperties);
+        logger.start();
+        return logger;
+    }
+
+    private int sampled(int trials) {
+        int hits = 0;
+        for (int i = 0; i < trials; i++) {
+            if (auditLogger.sampleRead()) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    private static AuditRecord record(String bookId) {
+        return new AuditRecord("ORG1", "createBook", bookId, "tx-" + bookId, 1, 10, 20, 30, true);
+    }
+
+    /**
+     * 记录 AUDIT 日志；block 为 true 时第一条记录会卡住写线程直到 release
+     */
+    private static class CapturingAppender extends AppenderBase<ILoggingEvent> {
+
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile boolean block;
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            if (block && entered.getCount() > 0) {
+                entered.countDown();
+                // stop() 会中断写线程，这里必须等到 release 而不是被中断提前返回
+                boolean interrupted = false;
+                while (true) {
+                    try {
+                        release.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            messages.add(event.getFormattedMessage());
+        }
+
+        private List<String> records() {
+            return messages.stream().filter(message -> !message.contains("累计丢弃")).toList();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.arsc.bookchaingateway.trace.outbox;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboxLogTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void appendRollAndResumeFromCheckpoint() throws Exception {
+        try (OutboxLog log = new OutboxLog(dir, 64, 0)) {
+            for (int i = 1; i <= 10; i++) {
+                assertEquals(i, log.append(("book-" + i).getBytes(StandardCharsets.UTF_8)));
+            }
+            List<OutboxLog.LogRecord> records = log.readBatch(4);
+            assertEquals(4, records.size());
+            assertEquals("book-4", new String(records.get(3).getData(), StandardCharsets.UTF_8));
+            log.checkpoint(4);
+        }
+
+        try (OutboxLog log = new OutboxLog(dir, 64, 0)) {
+            assertEquals(10, log.getDurableSeq());
+            List<OutboxLog.LogRecord> records = log.readBatch(100);
+            assertEquals(6, records.size());
+            assertEquals(5, records.get(0).getSeq());
+            assertEquals(11, log.append("book-11".getBytes(StandardCharsets.UTF_8)));
+
+            log.checkpoint(11);
+            assertEquals(1, log.getSegmentCount());
+        }
+    }
+
+    @Test
+    void truncatesTornTailOnRecovery() throws Exception {
+        try (OutboxLog log = new OutboxLog(dir, 1024, 0)) {
+            log.append("book-1".getBytes(StandardCharsets.UTF_8));
+            log.append("book-2".getBytes(StandardCharsets.UTF_8));
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(dir)) {
+            segment = files.filter(p -> p.toString().endsWith(".seg")).findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (OutboxLog log = new OutboxLog(dir, 1024, 0)) {
+            assertEquals(1, log.getDurableSeq());
+            assertEquals(2, log.append("book-2".getBytes(StandardCharsets.UTF_8)));
+            assertEquals(2, log.readBatch(10).size());
+        }
+    }
+
+    @Test
+    void concurrentAppendsStayContiguousAcrossSegmentRolls() throws Exception {
+        int threads = 8;
+        int perThread = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (OutboxLog log = new OutboxLog(dir, 256, 1)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        long seq = log.append(("book-" + i).getBytes(StandardCharsets.UTF_8));
+                        // append 返回时记录必须已落盘
+                        assertTrue(log.getDurableSeq() >= seq);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            assertEquals(threads * perThread, log.getDurableSeq());
+
+            long expected = 1;
+            List<OutboxLog.LogRecord> records;
+            while (!(records = log.readBatch(100)).isEmpty()) {
+                for (OutboxLog.LogRecord record : records) {
+                    assertEquals(expected++, record.getSeq());
+                }
+            }
+            assertEquals(threads * perThread + 1, expected);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,455 @@
+package com.arsc.bookchaingateway.trace.outbox;
+
+import com.arsc.bookchaingateway.trace.audit.AuditLogger;
+import com.arsc.bookchaingateway.trace.config.AuditProperties;
+import com.arsc.bookchaingateway.trace.config.FabricProperties;
+import com.arsc.bookchaingateway.trace.config.OutboxProperties;
+import com.arsc.bookchaingateway.trace.dto.BookDTO;
+import com.arsc.bookchaingateway.trace.service.FabricGatewayService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.hyperledger.fabric.client.CommitStatusException;
+import org.hyperledger.fabric.client.EndorseException;
+import org.hyperledger.fabric.client.GatewayRuntimeException;
+import org.hyperledger.fabric.client.SubmitException;
+import org.hyperledger.fabric.client.SubmittedTransaction;
+import org.hyperledger.fabric.client.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 发件箱投递线程测试：链上调用由桩替代，断言合并、拆分、重试与死信行为
+ */
+class OutboxServiceTests {
+
+    private static final long DRAIN_TIMEOUT_MS = 10000;
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final FabricGatewayService fabric = mock(FabricGatewayService.class);
+    private final OutboxProperties outboxProperties = new OutboxProperties();
+    private OutboxService outbox;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        outboxProperties.setEnabled(true);
+        outboxProperties.setDirectory(dir.toString());
+        outboxProperties.setFsyncIntervalMs(0);
+        outboxProperties.setMaxTransactionsPerSecond(0);
+        outboxProperties.setMaxAttempts(2);
+        outboxProperties.setRetryBackoffMs(1);
+        outboxProperties.setMaxBackoffMs(5);
+        when(fabric.splitByShard(anyString(), anyList())).thenAnswer(invocation -> {
+            List<BookDTO> books = invocation.getArgument(1);
+            return List.of(books);
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (outbox != null) {
+            outbox.stop();
+        }
+    }
+
+    @Test
+    void mergesConsecutiveRequestsWithoutOverlappingBookIds() throws Exception {
+        List<String> calls = new ArrayList<>();
+        when(fabric.endorse(anyString(), any(), anyString(), anyList())).thenAnswer(invocation -> {
+            calls.add(invocation.getArgument(2) + ":" + ids(invocation.getArgument(3)));
+            return committed("tx-" + calls.size());
+        });
+
+        // 先写入日志再启动投递线程，使所有记录在同一批中被读到
+        preload(entry("createBook", "A"), entry("createBook", "B"),
+                entry("updateBookLocation", "A"), entry("updateBookLocation", "A"),
+                entry("updateBookLocation", "B"), entry("deleteBook", "A"));
+        start();
+        awaitDrained(6);
+
+        assertEquals(List.of(
+                "batchCreateBooks:[A, B]",
+                // 第二条 A 与本组重复，必须留到下一笔交易，保证同一 bookId 按序生效
+                "updateBookLocation:[A]",
+                "batchUpdateBookLocation:[A, B]",
+                "deleteBook:[A]"), calls);
+        assertEquals(4, outbox.getStatus().getSubmittedTransactions());
+    }
+
+    @Test
+    void doesNotMergeAcrossOperatorsOrShards() throws Exception {
+        List<String> calls = new ArrayList<>();
+        when(fabric.shardOf(anyString(), anyString())).thenAnswer(invocation -> "C".equals(invocation.getArgument(1)) ? 1 : 0);
+        when(fabric.endorse(anyString(), any(), anyString(), anyList())).thenAnswer(invocation -> {
+            calls.add(invocation.getArgument(1) + ":" + ids(invocation.getArgument(3)));
+            return committed("tx-" + calls.size());
+        });
+
+        OutboxEntry other = entry("createBook", "B");
+        other.getBooks().get(0).setOperatorId("op-2");
+        preload(entry("createBook", "A"), other, entry("createBook", "C"), entry("createBook", "D"));
+        start();
+        awaitDrained(4);
+
+        assertEquals(List.of("null:[A]", "op-2:[B]", "null:[C]", "null:[D]"), calls);
+    }
+
+    @Test
+    void splitsFailedMergedBatchAndDeadLettersOnlyTheBadRecord() throws Exception {
+        List<String> calls = new ArrayList<>();
+        when(fabric.endorse(anyString(), any(), anyString(), anyList())).thenAnswer(invocation -> {
+            List<BookDTO> books = invocation.getArgument(3);
+            calls.add(ids(books).toString());
+            if (ids(books).contains("B")) {
+                throw new EndorseException("tx", new StatusRuntimeException(Status.ABORTED));
+            }
+            return committed("tx-" + calls.size());
+        });
+
+        preload(entry("createBook", "A"), entry("createBook", "B"), entry("createBook", "C"));
+        start();
+        awaitDrained(3);
+
+        // 合并批量失败后逐条投递，B 重试 maxAttempts 次后进入死信，A、C 正常上链
+        assertEquals(List.of("[A, B, C]", "[A]", "[B]", "[B]", "[C]"), calls);
+        List<DeadLetter> deadLetters = outbox.getDeadLetters();
+        assertEquals(1, deadLetters.size());
+        assertEquals(2, deadLetters.get(0).getSeq());
+        assertEquals(2, deadLetters.get(0).getAttempts());
+        assertNull(deadLetters.get(0).getTxId());
+        assertEquals(1, outbox.getStatus().getDeadLetters());
+    }
+
+    @Test
+    void transientEndorseFailuresDoNotCountAsAttempts() throws Exception {
+        Transaction transaction = committed("tx-1");
+        StatusRuntimeException unavailable = new StatusRuntimeException(Status.UNAVAILABLE);
+        when(fabric.endorse(anyString(), any(), anyString(), anyList()))
+                .thenThrow(new EndorseException("tx", unavailable))
+                .thenThrow(new EndorseException("tx", unavailable))
+                .thenThrow(new EndorseException("tx", unavailable))
+                .thenReturn(transaction);
+
+        preload(entry("createBook", "A"));
+        start();
+        awaitDrained(1);
+
+        verify(fabric, times(4)).endorse(anyString(), any(), eq("createBook"), anyList());
+        assertTrue(outbox.getDeadLetters().isEmpty());
+        assertFalse(outbox.getStatus().isDegraded());
+    }
+
+    @Test
+    void resubmitsTheSameTransactionWhenSubmitFails() throws Exception {
+        Transaction transaction = mock(Transaction.class);
+        SubmittedTransaction commit = successfulCommit("tx-1");
+        when(transaction.getTransactionId()).thenReturn("tx-1");
+        when(transaction.submitAsync())
+                .thenThrow(new SubmitException("tx-1", new StatusRuntimeException(Status.UNAVAILABLE)))
+                .thenReturn(commit);
+        when(fabric.endorse(anyString(), any(), anyString(), anyList())).thenReturn(transaction);
+
+        preload(entry("updateBookLocation", "A"));
+        start();
+        awaitDrained(1);
+
+        // 重发同一笔已签名交易，而不是重新背书生成新的 txId
+        verify(fabric, times(1)).endorse(anyString(), any(), anyString(), anyList());
+        verify(transaction, times(2)).submitAsync();
+    }
+
+    @Test
+    void pollsCommitStatusOfTheSameTransactionInsteadOfResubmitting() throws Exception {
+        Transaction transaction = mock(Transaction.class);
+        SubmittedTransaction commit = mock(SubmittedTransaction.class);
+        org.hyperledger.fabric.client.Status valid = status(true);
+        when(transaction.getTransactionId()).thenReturn("tx-1");
+        when(transaction.submitAsync()).thenReturn(commit);
+        when(commit.getStatus())
+                .thenThrow(new CommitStatusException("tx-1", new StatusRuntimeException(Status.DEADLINE_EXCEEDED)))
+                .thenThrow(new CommitStatusException("tx-1", new StatusRuntimeException(Status.DEADLINE_EXCEEDED)))
+                .thenReturn(valid);
+        when(fabric.endorse(anyString(), any(), anyString(), anyList())).thenReturn(transaction);
+
+        preload(entry("updateBookLocation", "A"));
+        start();
+        awaitDrained(1);
+
+        verify(fabric, times(1)).endorse(anyString(), any(), anyString(), anyList());
+        verify(transaction, times(1)).submitAsync();
+        verify(commit, times(3)).getStatus();
+    }
+
+    @Test
+    void deadLettersWithTxIdWhenCommitStatusCannotBeDetermined() throws Exception {
+        Transaction transaction = mock(Transaction.class);
+        SubmittedTransaction commit = mock(SubmittedTransaction.class);
+        when(transaction.getTransactionId()).thenReturn("tx-1");
+        when(transaction.submitAsync()).thenReturn(commit);
+        when(commit.getStatus()).thenThrow(
+                new CommitStatusException("tx-1", new StatusRuntimeException(Status.PERMISSION_DENIED)));
+        when(fabric.endorse(anyString(), any(), anyString(), anyList())).thenReturn(transaction);
+
+        preload(entry("createBook", "A"));
+        start();
+        awaitDrained(1);
+
+        // 结果未知时绝不重新背书，只记录 txId 供人工核对
+        verify(fabric, times(1)).endorse(anyString(), any(), anyString(), anyList());
+        DeadLetter deadLetter = outbox.getDeadLetters().get(0);
+        assertEquals("tx-1", deadLetter.getTxId());
+    }
+
+    @Test
+    void reEndorsesWhenCommittedTransactionIsInvalid() throws Exception {
+        Transaction conflicted = mock(Transaction.class);
+        SubmittedTransaction conflictedCommit = mock(SubmittedTransaction.class);
+        org.hyperledger.fabric.client.Status invalid = status(false);
+        when(conflicted.getTransactionId()).thenReturn("tx-1");
+        when(conflicted.submitAsync()).thenReturn(conflictedCommit);
+        when(conflictedCommit.getStatus()).thenReturn(invalid);
+        Transaction retried = committed("tx-2");
+        when(fabric.endorse(anyString(), any(), anyString(), anyList())).thenReturn(conflicted, retried);
+
+        preload(entry("updateBookLocation", "A"));
+        start();
+        awaitDrained(1);
+
+        verify(fabric, times(2)).endorse(anyString(), any(), anyString(), anyList());
+        assertTrue(outbox.getDeadLetters().isEmpty());
+    }
+
+    @Test
+    void resumesTheSavedTransactionAfterRestartInsteadOfReEndorsing() throws Exception {
+        byte[] bytes = "signed-tx-1".getBytes(StandardCharsets.UTF_8);
+        Transaction transaction = mock(Transaction.class);
+        SubmittedTransaction pending = mock(SubmittedTransaction.class);
+        when(transaction.getTransactionId()).thenReturn("tx-1");
+        when(transaction.getBytes()).thenReturn(bytes);
+        when(transaction.submitAsync()).thenReturn(pending);
+        when(pending.getStatus()).thenThrow(
+                new CommitStatusException("tx-1", new StatusRuntimeException(Status.UNAVAILABLE)));
+        when(fabric.endorse(anyString(), any(), anyString(), anyList())).thenReturn(transaction);
+
+        // 第一次运行：交易已提交，但始终查不到提交状态时进程退出
+        preload(entry("createBook", "A"), entry("createBook", "B"));
+        start();
+        verify(transaction, timeout(DRAIN_TIMEOUT_MS)).submitAsync();
+        outbox.stop();
+
+        Transaction restored = committed("tx-1");
+        when(fabric.restoreTransaction(eq("ORG1"), isNull(), eq(bytes))).thenReturn(restored);
+        start();
+        awaitDrained(2);
+
+        // 重启后重发同一笔交易 (同一 txId、同一组记录)，不再重新背书
+        verify(fabric, times(1)).endorse(anyString(), any(), anyString(), anyList());
+        verify(restored, times(1)).submitAsync();
+        assertEquals(1, outbox.getStatus().getSubmittedTransactions());
+    }
+
+    @Test
+    void deadLettersSavedTransactionThatCannotBeRestored() throws Exception {
+        Transaction transaction = mock(Transaction.class);
+        SubmittedTransaction pending = mock(SubmittedTransaction.class);
+        when(transaction.getTransactionId()).thenReturn("tx-1");
+        when(transaction.getBytes()).thenReturn(new byte[]{1});
+        when(transaction.submitAsync()).thenReturn(pending);
+        when(pending.getStatus()).thenThrow(
+                new CommitStatusException("tx-1", new StatusRuntimeException(Status.UNAVAILABLE)));
+        when(fabric.endorse(anyString(), any(), anyString(), anyList())).thenReturn(transaction);
+
+        preload(entry("createBook", "A"));
+        start();
+        verify(transaction, timeout(DRAIN_TIMEOUT_MS)).submitAsync();
+        outbox.stop();
+
+        when(fabric.restoreTransaction(anyString(), any(), any()))
+                .thenThrow(new IllegalArgumentException("未找到操作员身份"));
+        start();
+        awaitDrained(1);
+
+        verify(fabric, times(1)).endorse(anyString(), any(), anyString(), anyList());
+        assertEquals("tx-1", outbox.getDeadLetters().get(0).getTxId());
+    }
+
+    @Test
+    void enqueueSplitsCrossShardBatchIntoPerShardRecords() throws Exception {
+        BookDTO a = book("A");
+        BookDTO b = book("B");
+        when(fabric.splitByShard(anyString(), anyList())).thenReturn(List.of(List.of(a), List.of(b)));
+        when(fabric.shardOf(anyString(), eq("B"))).thenReturn(1);
+        ArgumentCaptor<List<BookDTO>> books = listCaptor();
+        when(fabric.endorse(anyString(), any(), anyString(), books.capture()))
+                .thenAnswer(invocation -> committed("tx"));
+
+        start();
+        long seq = outbox.enqueue("ORG1", "batchCreateBooks", List.of(a, b));
+        assertEquals(2, seq);
+        awaitDrained(2);
+
+        assertEquals(List.of(List.of("A"), List.of("B")),
+                books.getAllValues().stream().map(OutboxServiceTests::ids).collect(Collectors.toList()));
+    }
+
+    @Test
+    void enqueueRejectsUnknownOperatorAndMixedOperators() throws Exception {
+        doThrow(new IllegalArgumentException("未找到操作员身份: org1/ghost"))
+                .when(fabric).resolveOperator("ORG1", "ghost");
+        BookDTO ghost = book("A");
+        ghost.setOperatorId("ghost");
+        BookDTO other = book("B");
+        other.setOperatorId("op-2");
+
+        start();
+        assertThrows(IllegalArgumentException.class,
+                () -> outbox.enqueue("ORG1", "createBook", List.of(ghost)));
+        assertThrows(IllegalArgumentException.class,
+                () -> outbox.enqueue("ORG1", "batchCreateBooks", List.of(book("C"), other)));
+        assertEquals(0, outbox.getStatus().getDurableSeq());
+    }
+
+    @Test
+    void deadLettersUnroutableHeadInsteadOfBlockingTheQueue() throws Exception {
+        when(fabric.shardOf(anyString(), isNull())).thenThrow(new IllegalArgumentException("多分片模式下 bookId 不能为空"));
+        List<String> calls = new ArrayList<>();
+        when(fabric.endorse(anyString(), any(), anyString(), anyList())).thenAnswer(invocation -> {
+            calls.add(ids(invocation.getArgument(3)).toString());
+            return committed("tx-" + calls.size());
+        });
+
+        // 早期版本写入的坏记录：既不能阻塞后续写入，也不能让队首的好记录被错误地送进死信
+        preload(entry("createBook", null), entry("createBook", "A"),
+                entry("createBook", "B"), entry("createBook", null));
+        start();
+        awaitDrained(4);
+
+        assertEquals(List.of("[A, B]"), calls);
+        assertEquals(List.of(1L, 4L), outbox.getDeadLetters().stream().map(DeadLetter::getSeq)
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    void enqueueRejectsSingleWriteWithoutBookId() throws Exception {
+        start();
+        assertThrows(IllegalArgumentException.class,
+                () -> outbox.enqueue("ORG1", "createBook", List.of(book(null))));
+        assertThrows(IllegalArgumentException.class,
+                () -> outbox.enqueue("ORG1", "deleteBook", List.of(book(""))));
+        assertEquals(0, outbox.getStatus().getDurableSeq());
+    }
+
+    @Test
+    void classifiesNetworkErrorsAsTransient() {
+        assertTrue(OutboxService.isTransient(
+                new EndorseException("tx", new StatusRuntimeException(Status.UNAVAILABLE))));
+        assertTrue(OutboxService.isTransient(
+                new SubmitException("tx", new StatusRuntimeException(Status.DEADLINE_EXCEEDED))));
+        // 消息超限等 RESOURCE_EXHAUSTED 重试也不会成功，需要能进入死信
+        assertFalse(OutboxService.isTransient(new RuntimeException(
+                new GatewayRuntimeException(new StatusRuntimeException(Status.RESOURCE_EXHAUSTED)))));
+        assertTrue(OutboxService.isTransient(new RuntimeException(
+                new GatewayRuntimeException(new StatusRuntimeException(Status.UNAVAILABLE)))));
+        assertFalse(OutboxService.isTransient(
+                new EndorseException("tx", new StatusRuntimeException(Status.ABORTED))));
+        assertFalse(OutboxService.isTransient(new IllegalArgumentException("非法的操作员ID")));
+    }
+
+    private void start() throws Exception {
+        FabricProperties fabricProperties = new FabricProperties();
+        fabricProperties.setOrganizations(Map.of("org1", new FabricProperties.OrgConfig()));
+        AuditProperties auditProperties = new AuditProperties();
+        auditProperties.setEnabled(false);
+        outbox = new OutboxService(outboxProperties, fabricProperties, fabric, objectMapper,
+                new AuditLogger(auditProperties));
+        outbox.start();
+    }
+
+    private void preload(OutboxEntry... entries) throws Exception {
+        try (OutboxLog log = new OutboxLog(dir, outboxProperties.getSegmentMaxBytes(), 0)) {
+            for (OutboxEntry entry : entries) {
+                log.append(objectMapper.writeValueAsBytes(entry));
+            }
+        }
+    }
+
+    private void awaitDrained(long seq) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while (outbox.getStatus().getDrainedSeq() < seq) {
+            assertTrue(System.currentTimeMillis() < deadline, "发件箱未在超时前投递完成");
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    private static OutboxEntry entry(String function, String bookId) {
+        return new OutboxEntry("ORG1", function, List.of(book(bookId)));
+    }
+
+    private static BookDTO book(String bookId) {
+        BookDTO book = new BookDTO();
+        book.setId(bookId);
+        return book;
+    }
+
+    private static List<String> ids(List<BookDTO> books) {
+        return books.stream().map(BookDTO::getId).collect(Collectors.toList());
+    }
+
+    private static Transaction committed(String txId) throws Exception {
+        Transaction transaction = mock(Transaction.class);
+        SubmittedTransaction commit = successfulCommit(txId);
+        when(transaction.getTransactionId()).thenReturn(txId);
+        when(transaction.submitAsync()).thenReturn(commit);
+        return transaction;
+    }
+
+    private static SubmittedTransaction successfulCommit(String txId) throws Exception {
+        SubmittedTransaction commit = mock(SubmittedTransaction.class);
+        org.hyperledger.fabric.client.Status status = status(true);
+        when(commit.getTransactionId()).thenReturn(txId);
+        when(commit.getStatus()).thenReturn(status);
+        return commit;
+    }
+
+    private static org.hyperledger.fabric.client.Status status(boolean successful) {
+        org.hyperledger.fabric.client.Status status = mock(org.hyperledger.fabric.client.Status.class);
+        when(status.isSuccessful()).thenReturn(successful);
+        return status;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<BookDTO>> listCaptor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+}
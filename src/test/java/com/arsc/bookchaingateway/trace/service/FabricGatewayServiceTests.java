@@ -0,0 +1,248 @@
+package com.arsc.bookchaingateway.trace.service;
+
+import com.arsc.bookchaingateway.trace.audit.AuditLogger;
+import com.arsc.bookchaingateway.trace.config.AuditProperties;
+import com.arsc.bookchaingateway.trace.config.FabricProperties;
+import com.arsc.bookchaingateway.trace.dto.BookDTO;
+import com.arsc.bookchaingateway.trace.dto.ShardBatchResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.hyperledger.fabric.client.Contract;
+import org.hyperledger.fabric.client.EndorseException;
+import org.hyperledger.fabric.client.GatewayException;
+import org.hyperledger.fabric.client.Proposal;
+import org.hyperledger.fabric.client.SubmitException;
+import org.hyperledger.fabric.client.SubmittedTransaction;
+import org.hyperledger.fabric.client.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 多分片读写测试：各分片合约由桩替代，断言分片子批量的状态分类、历史合并、详情回退、新增分片后的写入定位与操作员ID校验
+ */
+class FabricGatewayServiceTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final FabricProperties fabricProperties = new FabricProperties();
+    private FabricGatewayService service;
+    private Contract[] contracts;
+    private ShardRouter router;
+    private final List<String> used = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.destroy();
+        }
+    }
+
+    @Test
+    void classifiesShardBatchResultsByStage() throws Exception {
+        start(3);
+        List<BookDTO> books = List.of(book(bookOnShard(0)), book(bookOnShard(1)), book(bookOnShard(2)));
+
+        // 分片 0 成功上链；分片 1 背书失败；分片 2 背书成功但提交时超时
+        SubmittedTransaction commit = mock(SubmittedTransaction.class);
+        org.hyperledger.fabric.client.Status valid = mock(org.hyperledger.fabric.client.Status.class);
+        when(valid.isSuccessful()).thenReturn(true);
+        when(commit.getStatus()).thenReturn(valid);
+        when(commit.getResult()).thenReturn("ok".getBytes(StandardCharsets.UTF_8));
+        Transaction committed = mock(Transaction.class);
+        when(committed.submitAsync()).thenReturn(commit);
+        when(proposal(0, "tx-0").endorse()).thenReturn(committed);
+
+        when(proposal(1, "tx-1").endorse())
+                .thenThrow(new EndorseException("tx-1", new StatusRuntimeException(Status.ABORTED)));
+
+        Transaction timedOut = mock(Transaction.class);
+        when(timedOut.submitAsync())
+                .thenThrow(new SubmitException("tx-2", new StatusRuntimeException(Status.DEADLINE_EXCEEDED)));
+        when(proposal(2, "tx-2").endorse()).thenReturn(timedOut);
+
+        Map<String, ShardBatchResult> results = service.batchCreateBooks("ORG1", null, books).stream()
+                .collect(Collectors.toMap(ShardBatchResult::getTxId, result -> result));
+
+        assertEquals(ShardBatchResult.COMMITTED, results.get("tx-0").getStatus());
+        assertEquals("ok", results.get("tx-0").getResult());
+        assertEquals(ShardBatchResult.FAILED, results.get("tx-1").getStatus());
+        // 排序节点可能已经收到交易，不能告诉客户端可以直接重试
+        assertEquals(ShardBatchResult.UNKNOWN, results.get("tx-2").getStatus());
+        assertEquals(List.of(books.get(2).getId()), results.get("tx-2").getBookIds());
+    }
+
+    @Test
+    void mergesHistoryFromAllShardsByTimestamp() throws Exception {
+        start(2);
+        when(contracts[0].evaluateTransaction("getBookHistory", "A")).thenReturn(json(
+                "[{\"txId\":\"t2\",\"timestamp\":\"2024-01-02T00:00:00Z\"}]"));
+        when(contracts[1].evaluateTransaction("getBookHistory", "A")).thenReturn(json(
+                "[{\"txId\":\"t1\",\"timestamp\":\"2024-01-01T00:00:00Z\"},"
+                        + "{\"txId\":\"t3\",\"timestamp\":\"2024-01-03T00:00:00Z\"}]"));
+
+        List<?> history = objectMapper.readValue(service.getBookHistory("ORG1", null, "A"), List.class);
+
+        assertEquals(List.of("t1", "t2", "t3"), history.stream()
+                .map(record -> ((Map<?, ?>) record).get("txId")).collect(Collectors.toList()));
+    }
+
+    @Test
+    void queryFallsBackToOtherShardsWhenOwnerHasNoRecord() throws Exception {
+        start(2);
+        String empty = bookOnShard(0);
+        when(contracts[0].evaluateTransaction("queryBook", empty)).thenReturn(new byte[0]);
+        when(contracts[1].evaluateTransaction("queryBook", empty)).thenReturn(json("{\"bookId\":\"x\"}"));
+        assertEquals("{\"bookId\":\"x\"}", service.queryBook("ORG1", null, empty));
+
+        String failing = bookOnShard(1);
+        when(contracts[1].evaluateTransaction("queryBook", failing))
+                .thenThrow(new GatewayException(new StatusRuntimeException(Status.UNKNOWN)));
+        when(contracts[0].evaluateTransaction("queryBook", failing)).thenReturn(json("{\"bookId\":\"y\"}"));
+        assertEquals("{\"bookId\":\"y\"}", service.queryBook("ORG1", null, failing));
+
+        // 所有分片都查不到时保留所属分片的错误
+        String missing = bookOnShard(0);
+        when(contracts[0].evaluateTransaction("queryBook", missing))
+                .thenThrow(new GatewayException(new StatusRuntimeException(Status.NOT_FOUND)));
+        when(contracts[1].evaluateTransaction("queryBook", missing)).thenReturn(new byte[0]);
+        assertThrows(GatewayException.class, () -> service.queryBook("ORG1", null, missing));
+    }
+
+    @Test
+    void routesWritesForExistingBooksToTheShardThatHoldsThem() throws Exception {
+        // 首次上线 2 个分片，之后追加了分片 2
+        start(3, 2);
+        String moved = remappedBook(2);
+        int origin = router.candidates(moved)[0];
+        when(contracts[origin].evaluateTransaction("queryBook", moved)).thenReturn(json("{\"bookId\":\"x\"}"));
+        Transaction transaction = mock(Transaction.class);
+        when(transaction.submit()).thenReturn(json("ok"));
+        when(proposal(origin, "updateBookLocation", "tx-1").endorse()).thenReturn(transaction);
+
+        assertEquals("ok", service.updateBookLocation("ORG1", null, moved, "仓库B", "入库", "张三", "库管"));
+        assertEquals("ok", service.updateBookLocation("ORG1", null, moved, "仓库C", "出库", "张三", "库管"));
+        // 定位结果被缓存，只探测一次
+        verify(contracts[origin], times(1)).evaluateTransaction("queryBook", moved);
+        verify(contracts[2], never()).newProposal("updateBookLocation");
+
+        // 历代分片上都查不到的新书写入当前归属分片
+        String fresh = remappedBook(2);
+        when(contracts[router.candidates(fresh)[0]].evaluateTransaction("queryBook", fresh))
+                .thenThrow(new GatewayException(new StatusRuntimeException(Status.NOT_FOUND)));
+        assertEquals(2, service.shardOf("ORG1", fresh));
+
+        // 探测时 peer 不可达不能当作图书不存在
+        String unreachable = remappedBook(2);
+        when(contracts[router.candidates(unreachable)[0]].evaluateTransaction("queryBook", unreachable))
+                .thenThrow(new GatewayException(new StatusRuntimeException(Status.UNAVAILABLE)));
+        assertThrows(GatewayException.class, () -> service.shardOf("ORG1", unreachable));
+    }
+
+    @Test
+    void rejectsOperatorIdsThatEscapeTheKeystoreDir() throws Exception {
+        start(1);
+        for (String operatorId : List.of(".", "..", "../op-1", "op/1")) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> service.resolveOperator("ORG1", operatorId));
+            assertTrue(e.getMessage().startsWith("非法的操作员ID"), e.getMessage());
+        }
+        // 合法ID 通过校验后才去加载身份 (测试机构未配置 keystore-dir)
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> service.resolveOperator("ORG1", ".op-1"));
+        assertTrue(e.getMessage().contains("keystore-dir"), e.getMessage());
+    }
+
+    private void start(int shardCount) throws Exception {
+        start(shardCount, shardCount);
+    }
+
+    private void start(int shardCount, int initialShardCount) throws Exception {
+        List<FabricProperties.ShardConfig> shards = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            FabricProperties.ShardConfig shard = new FabricProperties.ShardConfig();
+            shard.setChannelName("ch" + i);
+            shard.setChaincodeName("booktrace");
+            shards.add(shard);
+            keys.add(shard.getKey());
+        }
+        fabricProperties.setShards(shards);
+        fabricProperties.setInitialShardCount(initialShardCount);
+        AuditProperties auditProperties = new AuditProperties();
+        auditProperties.setEnabled(false);
+        service = new FabricGatewayService(fabricProperties, objectMapper, new AuditLogger(auditProperties));
+        service.init();
+
+        contracts = new Contract[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            contracts[i] = mock(Contract.class);
+        }
+        service.registerOrg("org1", new GatewayContracts(null, contracts));
+        router = new ShardRouter(keys, initialShardCount);
+    }
+
+    private Proposal proposal(int shard, String txId) {
+        return proposal(shard, "batchCreateBooks", txId);
+    }
+
+    private Proposal proposal(int shard, String function, String txId) {
+        Proposal.Builder builder = mock(Proposal.Builder.class, RETURNS_SELF);
+        Proposal proposal = mock(Proposal.class);
+        when(builder.build()).thenReturn(proposal);
+        when(proposal.getTransactionId()).thenReturn(txId);
+        when(contracts[shard].newProposal(function)).thenReturn(builder);
+        return proposal;
+    }
+
+    /**
+     * 每次调用返回一个新的、路由到指定分片的 bookId
+     */
+    private String bookOnShard(int shard) {
+        for (int i = 0; ; i++) {
+            String bookId = "BOOK-" + shard + "-" + i;
+            if (router.route(bookId) == shard && !used.contains(bookId)) {
+                used.add(bookId);
+                return bookId;
+            }
+        }
+    }
+
+    /**
+     * 每次调用返回一个新的、当前归属指定分片但在较早分片数下归属其它分片的 bookId
+     */
+    private String remappedBook(int shard) {
+        for (int i = 0; ; i++) {
+            String bookId = "MOVED-" + shard + "-" + i;
+            if (router.candidates(bookId).length > 1 && router.route(bookId) == shard && !used.contains(bookId)) {
+                used.add(bookId);
+                return bookId;
+            }
+        }
+    }
+
+    private static BookDTO book(String bookId) {
+        BookDTO book = new BookDTO();
+        book.setId(bookId);
+        return book;
+    }
+
+    private static byte[] json(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
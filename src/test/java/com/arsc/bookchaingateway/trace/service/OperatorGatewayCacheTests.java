@@ -0,0 +1,115 @@
+package com.arsc.bookchaingateway.trace.service;
+
+import org.hyperledger.fabric.client.Contract;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OperatorGatewayCacheTests {
+
+    @Test
+    void concurrentMissesRunASingleLoader() throws Exception {
+        OperatorGatewayCache cache = new OperatorGatewayCache(16, 1000);
+        GatewayContracts contracts = new GatewayContracts(null, new Contract[1]);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<GatewayContracts>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> cache.get("org1/op-1", () -> {
+                    loads.incrementAndGet();
+                    // 加载期间其余线程都应等待同一个结果，而不是各自加载
+                    release.await(5, TimeUnit.SECONDS);
+                    return contracts;
+                })));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<GatewayContracts> result : results) {
+                assertSame(contracts, result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void cachesFailedLookupsUntilTtlExpires() throws Exception {
+        AtomicLong now = new AtomicLong();
+        OperatorGatewayCache cache = new OperatorGatewayCache(16, 5000, now::get);
+        AtomicInteger loads = new AtomicInteger();
+        OperatorGatewayCache.Loader failing = () -> {
+            loads.incrementAndGet();
+            throw new IllegalArgumentException("未找到操作员身份: org1/ghost");
+        };
+
+        assertThrows(IllegalArgumentException.class, () -> cache.get("org1/ghost", failing));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(4999));
+        assertThrows(IllegalArgumentException.class, () -> cache.get("org1/ghost", failing));
+        assertEquals(1, loads.get());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        GatewayContracts contracts = new GatewayContracts(null, new Contract[1]);
+        assertSame(contracts, cache.get("org1/ghost", () -> contracts));
+        assertSame(contracts, cache.get("org1/ghost", failing));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void failedLookupsDoNotEvictLoadedGateways() throws Exception {
+        OperatorGatewayCache cache = new OperatorGatewayCache(2, 1000);
+        AtomicInteger loads = new AtomicInteger();
+        OperatorGatewayCache.Loader loader = () -> {
+            loads.incrementAndGet();
+            return new GatewayContracts(null, new Contract[1]);
+        };
+        cache.get("a", loader);
+        cache.get("b", loader);
+
+        for (int i = 0; i < 10; i++) {
+            String ghost = "ghost-" + i;
+            assertThrows(IllegalArgumentException.class, () -> cache.get(ghost, () -> {
+                throw new IllegalArgumentException("未找到操作员身份: " + ghost);
+            }));
+        }
+
+        cache.get("a", loader);
+        cache.get("b", loader);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOperator() throws Exception {
+        OperatorGatewayCache cache = new OperatorGatewayCache(2, 1000);
+        AtomicInteger loads = new AtomicInteger();
+        OperatorGatewayCache.Loader loader = () -> {
+            loads.incrementAndGet();
+            return new GatewayContracts(null, new Contract[1]);
+        };
+
+        cache.get("a", loader);
+        cache.get("b", loader);
+        cache.get("a", loader);
+        cache.get("c", loader);
+        assertEquals(3, loads.get());
+        cache.get("a", loader);
+        assertEquals(3, loads.get());
+        cache.get("b", loader);
+        assertEquals(4, loads.get());
+    }
+}
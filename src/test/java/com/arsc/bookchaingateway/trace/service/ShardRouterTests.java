@@ -0,0 +1,76 @@
+package com.arsc.bookchaingateway.trace.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardRouterTests {
+
+    private static final int BOOKS = 20000;
+
+    @Test
+    void spreadsBooksEvenlyAcrossShards() {
+        ShardRouter router = new ShardRouter(List.of("ch1/booktrace", "ch2/booktrace", "ch3/booktrace"));
+        int[] counts = new int[3];
+        for (int i = 0; i < BOOKS; i++) {
+            counts[router.route("ISBN-978-7-111-" + i)]++;
+        }
+        for (int count : counts) {
+            assertTrue(Math.abs(count - BOOKS / 3) < BOOKS / 3 * 0.2, "分片分布不均: " + count);
+        }
+    }
+
+    @Test
+    void addingShardOnlyMovesBooksToTheNewShard() {
+        ShardRouter before = new ShardRouter(List.of("ch1/booktrace", "ch2/booktrace", "ch3/booktrace"));
+        ShardRouter after = new ShardRouter(List.of("ch1/booktrace", "ch2/booktrace", "ch3/booktrace", "ch4/booktrace"));
+        int moved = 0;
+        for (int i = 0; i < BOOKS; i++) {
+            String bookId = "ISBN-978-7-111-" + i;
+            int from = before.route(bookId);
+            int to = after.route(bookId);
+            if (from != to) {
+                assertEquals(3, to);
+                moved++;
+            }
+        }
+        assertTrue(moved < BOOKS * 0.35, "迁移比例过高: " + moved);
+    }
+
+    @Test
+    void candidatesListEachGenerationsOwnerEndingWithTheCurrentOne() {
+        List<String> keys = List.of("ch1/booktrace", "ch2/booktrace", "ch3/booktrace", "ch4/booktrace");
+        ShardRouter router = new ShardRouter(keys, 2);
+        ShardRouter gen2 = new ShardRouter(keys.subList(0, 2));
+        ShardRouter gen3 = new ShardRouter(keys.subList(0, 3));
+        int remapped = 0;
+        for (int i = 0; i < BOOKS; i++) {
+            String bookId = "ISBN-978-7-111-" + i;
+            int[] candidates = router.candidates(bookId);
+            assertEquals(router.route(bookId), candidates[candidates.length - 1]);
+            assertEquals(gen2.route(bookId), candidates[0]);
+            assertTrue(candidates.length <= 3);
+            if (candidates.length == 3) {
+                assertEquals(gen3.route(bookId), candidates[1]);
+            }
+            if (candidates.length > 1) {
+                remapped++;
+            }
+        }
+        assertTrue(remapped < BOOKS * 0.6, "改变归属的比例过高: " + remapped);
+        // 未配置首次上线分片数时视为一直是当前这些分片
+        assertEquals(1, new ShardRouter(keys).candidates("ISBN-978-7-111-0").length);
+    }
+
+    @Test
+    void rejectsMissingBookIdWhenSharded() {
+        assertEquals(0, new ShardRouter(List.of("ch1/booktrace")).route(null));
+        ShardRouter router = new ShardRouter(List.of("ch1/booktrace", "ch2/booktrace"));
+        assertThrows(IllegalArgumentException.class, () -> router.route(null));
+        assertThrows(IllegalArgumentException.class, () -> router.route(""));
+    }
+}